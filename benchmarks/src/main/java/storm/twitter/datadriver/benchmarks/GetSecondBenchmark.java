@@ -0,0 +1,80 @@
+package storm.twitter.datadriver.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import storm.twitter.datadriver.DataDriverParameters;
+import storm.twitter.datadriver.MappedLineReader;
+import storm.twitter.datadriver.TweetReader;
+
+/**
+ * Cost of extracting the second of a line: from a String, as 
+ * TweetReader.getSecond(String) does, and straight from the mapped bytes,
+ * as MappedLineReader.getTimestamp() does. The latter also includes 
+ * finding the next line, which the String path gets for free from lines 
+ * decoded in advance.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GetSecondBenchmark {
+	
+	private static final int LINES = 1024;
+	
+	private File dataset;
+	private TweetReader tweetReader;
+	private MappedLineReader lineReader;
+	private String[] lines = new String[LINES];
+	private int next;
+	
+	@Setup
+	public void setup() throws Exception {
+		dataset = SyntheticDataset.create(1, LINES, 140);
+		DataDriverParameters ddp = new DataDriverParameters();
+		ddp.dataDriverfilename = dataset.getPath();
+		tweetReader = new TweetReader(ddp);
+		lineReader = new MappedLineReader(dataset.getPath());
+		for (int i = 0; i < LINES; i++) {
+			lineReader.nextLine();
+			lines[i] = lineReader.getLine();
+		}
+		lineReader.seek(0);
+	}
+	
+	@TearDown
+	public void tearDown() throws Exception {
+		tweetReader.close();
+		lineReader.close();
+		dataset.delete();
+	}
+	
+	@Benchmark
+	public int getSecondFromString() {
+		next = (next + 1) & (LINES - 1);
+		return tweetReader.getSecond(lines[next]);
+	}
+	
+	@Benchmark
+	public int getSecondFromMappedBytes() throws Exception {
+		if (!lineReader.nextLine()) {
+			lineReader.seek(0);
+			lineReader.nextLine();
+		}
+		return tweetReader.getSecond(lineReader.getTimestamp());
+	}
+}
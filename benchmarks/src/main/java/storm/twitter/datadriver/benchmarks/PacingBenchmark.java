@@ -0,0 +1,57 @@
+package storm.twitter.datadriver.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import storm.twitter.datadriver.DataDriverParameters;
+import storm.twitter.datadriver.Pacer;
+
+/**
+ * Accuracy of the pacer: each operation waits for a deadline gap 
+ * microseconds after the previous one, so the sampled operation times 
+ * should all be close to gap; their spread is the pacing error. A late
+ * wake-up restarts the chain of deadlines from the current time, so that 
+ * it is not compensated by the following waits.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PacingBenchmark {
+	
+	@Param({ "10", "100", "1000", "10000" })
+	public int gap;
+	
+	@Param({ "0", "100" })
+	public int spinThreshold;
+	
+	private Pacer pacer;
+	private long deadline;
+	
+	@Setup
+	public void setup() {
+		DataDriverParameters ddp = new DataDriverParameters();
+		ddp.spinThreshold = spinThreshold;
+		pacer = new Pacer(ddp);
+		deadline = System.nanoTime();
+	}
+	
+	@Benchmark
+	public long waitUntil() {
+		deadline = Math.max(deadline + gap * 1000L, System.nanoTime());
+		return pacer.waitUntil(deadline);
+	}
+}
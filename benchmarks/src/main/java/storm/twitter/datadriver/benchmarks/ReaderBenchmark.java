@@ -0,0 +1,98 @@
+package storm.twitter.datadriver.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import storm.twitter.datadriver.DataDriverParameters;
+import storm.twitter.datadriver.OneSecondTuples;
+import storm.twitter.datadriver.OneSecondTweets;
+import storm.twitter.datadriver.TupleReader;
+import storm.twitter.datadriver.TweetReader;
+
+/**
+ * Seconds of dataset read per second by TweetReader.nextSecondTweets() and
+ * TupleReader.nextSecondTuples(), both into a reused buffer, on synthetic
+ * datasets of increasing density. Each invocation reads the whole dataset
+ * with readers reopened before it, so that the scores do not include 
+ * opening them; looping instead would rebase the timestamps of the lines.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReaderBenchmark {
+	
+	private static final int SECONDS = 60;
+	
+	@Param({ "100", "2000", "20000" })
+	public int tweetsPerSecond;
+	
+	@Param({ "1", "10" })
+	public int replicationFactor;
+	
+	private File dataset;
+	private DataDriverParameters ddp;
+	private TweetReader tweetReader;
+	private TupleReader tupleReader;
+	private OneSecondTweets tweets;
+	private OneSecondTuples tuples;
+	
+	@Setup
+	public void setup() throws Exception {
+		dataset = SyntheticDataset.create(SECONDS, tweetsPerSecond, 140);
+		ddp = new DataDriverParameters();
+		ddp.dataDriverfilename = dataset.getPath();
+		ddp.tweetReplicationFactor = replicationFactor;
+		tweets = new OneSecondTweets(ddp.maxTweetPerSecond, replicationFactor);
+		tuples = new OneSecondTuples(ddp.maxTweetPerSecond, replicationFactor);
+	}
+	
+	@Setup(Level.Invocation)
+	public void open() throws Exception {
+		tweetReader = new TweetReader(ddp);
+		tupleReader = new TupleReader(ddp);
+	}
+	
+	@TearDown(Level.Invocation)
+	public void close() throws Exception {
+		tweetReader.close();
+		tupleReader.close();
+	}
+	
+	@TearDown
+	public void tearDown() throws Exception {
+		dataset.delete();
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(SECONDS)
+	public void nextSecondTweets(Blackhole blackhole) throws Exception {
+		while (!tweetReader.isEof())
+			blackhole.consume(tweetReader.nextSecondTweets(tweets));
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(SECONDS)
+	public void nextSecondTuples(Blackhole blackhole) throws Exception {
+		while (!tupleReader.isEof())
+			blackhole.consume(tupleReader.nextSecondTuples(tuples));
+	}
+}
@@ -0,0 +1,122 @@
+package storm.twitter.datadriver.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Connection;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.Session;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import storm.twitter.datadriver.DataDriverParameters;
+import storm.twitter.datadriver.NullSink;
+import storm.twitter.datadriver.TwitterDataDriver;
+
+/**
+ * End-to-end replay of a synthetic dataset by TwitterDataDriver into an
+ * embedded, non-persistent ActiveMQ broker, unthrottled (speed factor 0), 
+ * so that the time per operation is the time the driver needs to send the
+ * whole dataset. A listener drains the queue to keep the broker from 
+ * blocking producers. The null sink replays the same dataset without the
+ * broker, i.e. measures the ceiling of the driver itself. The driver is 
+ * built before each operation, so that opening the dataset and starting
+ * the prefetcher are not timed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SendLoopBenchmark {
+	
+	private static final int SECONDS = 10;
+	
+	@Param({ "2000" })
+	public int tweetsPerSecond;
+	
+	@Param({ "1", "4" })
+	public int producerThreads;
+	
+	@Param({ "false", "true" })
+	public boolean transactedSends;
+	
+	@Param({ "jms", "null" })
+	public String sink;
+	
+	private File dataset;
+	private BrokerService broker;
+	private ActiveMQConnectionFactory cf;
+	private ActiveMQQueue queue;
+	private Connection drainConnection;
+	private TwitterDataDriver driver;
+	
+	@Setup
+	public void setup() throws Exception {
+		dataset = SyntheticDataset.create(SECONDS, tweetsPerSecond, 140);
+		
+		broker = new BrokerService();
+		broker.setBrokerName("benchmark");
+		broker.setPersistent(false);
+		broker.setUseJmx(false);
+		broker.start();
+		broker.waitUntilStarted();
+		
+		cf = new ActiveMQConnectionFactory("vm://benchmark?create=false");
+		queue = new ActiveMQQueue("tweetQueue");
+		
+		drainConnection = cf.createConnection();
+		Session session = drainConnection.createSession(false, Session.DUPS_OK_ACKNOWLEDGE);
+		MessageConsumer consumer = session.createConsumer(queue);
+		consumer.setMessageListener(new MessageListener() {
+			public void onMessage(Message message) {
+			}
+		});
+		drainConnection.start();
+	}
+	
+	@TearDown
+	public void tearDown() throws Exception {
+		drainConnection.close();
+		broker.stop();
+		broker.waitUntilStopped();
+		dataset.delete();
+	}
+	
+	@Setup(Level.Invocation)
+	public void createDriver() throws Exception {
+		DataDriverParameters ddp = new DataDriverParameters();
+		ddp.dataDriverfilename = dataset.getPath();
+		ddp.speedFactor = 0.0;
+		ddp.producerThreads = producerThreads;
+		ddp.transactedSends = transactedSends;
+		ddp.metricsInterval = 0;
+		driver = new TwitterDataDriver(ddp);
+	}
+	
+	@Benchmark
+	public void replay() throws Exception {
+		if ("null".equals(sink))
+			driver.start(new NullSink());
+		else
+			driver.start(cf, queue);
+	}
+}
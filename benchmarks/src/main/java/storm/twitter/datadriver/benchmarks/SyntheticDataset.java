@@ -0,0 +1,46 @@
+package storm.twitter.datadriver.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * Writes datasets in the format read by TweetReader: one tweet per line, 
+ * starting with its timestamp (in ms) followed by ", " and a JSON-like 
+ * payload.
+ */
+public class SyntheticDataset {
+	
+	public static final long FIRST_TIMESTAMP = 1400000000000L;
+	
+	/**
+	 * @param seconds how many seconds the dataset spans
+	 * @param tweetsPerSecond how many tweets each second holds
+	 * @param payloadLength length (in chars) of the payload of each tweet
+	 * @return a temporary file, deleted on exit
+	 * @throws Exception
+	 */
+	public static File create(int seconds, int tweetsPerSecond, int payloadLength) throws Exception {
+		File file = File.createTempFile("synthetic-dataset-", ".txt");
+		file.deleteOnExit();
+		Random random = new Random(42);
+		char[] payload = new char[payloadLength];
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"), 1 << 16);
+		long id = 0;
+		for (int s = 0; s < seconds; s++) {
+			for (int i = 0; i < tweetsPerSecond; i++) {
+				long timestamp = FIRST_TIMESTAMP + s * 1000L + i * 1000L / tweetsPerSecond;
+				for (int c = 0; c < payloadLength; c++)
+					payload[c] = (char)('a' + random.nextInt(26));
+				writer.write(timestamp + ", {\"id\":" + (id++) + ",\"text\":\"");
+				writer.write(payload);
+				writer.write("\"}\n");
+			}
+		}
+		writer.close();
+		return file;
+	}
+}
@@ -0,0 +1,16 @@
+package storm.twitter.datadriver;
+
+/**
+ * Decodes each line to its bytes as they are in the file, UTF-8 for the
+ * datasets read by the driver.
+ */
+public class BytesDecoder implements RecordDecoder<byte[]> {
+	
+	public byte[] decode(LineReader reader) throws Exception {
+		return reader.getLineBytes();
+	}
+	
+	public byte[] decode(LineReader reader, long timestamp) throws Exception {
+		return reader.getRebasedLineBytes(timestamp);
+	}
+}
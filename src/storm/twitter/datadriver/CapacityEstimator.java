@@ -0,0 +1,53 @@
+package storm.twitter.datadriver;
+
+/**
+ * Rolling estimate of how many lines the next second will hold, used to size
+ * the per-second buffers according to the real load instead of the worst
+ * second of the dataset.
+ * The estimate is a decaying peak: it jumps up to any new peak and then 
+ * decays by DECAY every second, so buffers follow bursts immediately and 
+ * give memory back some tens of seconds after them.
+ */
+public class CapacityEstimator {
+	
+	private static final double DECAY = 0.95;
+	
+	/**
+	 * extra room over the estimate, so that ordinary fluctuations do not 
+	 * require buffers to grow
+	 */
+	private static final double HEADROOM = 1.25;
+	
+	private final int minCapacity;
+	private double peak;
+	
+	/**
+	 * @param initialCapacity the capacity to start with, also the minimum one
+	 */
+	public CapacityEstimator(int initialCapacity) {
+		this.minCapacity = Math.max(1, initialCapacity);
+		this.peak = minCapacity / HEADROOM;
+	}
+	
+	/**
+	 * @param count the number of lines in the second just read
+	 */
+	public void update(int count) {
+		peak = Math.max(count, peak * DECAY);
+	}
+	
+	/**
+	 * @return the capacity suggested for the next second
+	 */
+	public int getCapacity() {
+		return Math.max(minCapacity, (int)Math.ceil(peak * HEADROOM));
+	}
+	
+	/**
+	 * @param capacity the current capacity of a buffer
+	 * @return whether such a buffer is so larger than needed that it should shrink
+	 */
+	public boolean isOversized(int capacity) {
+		return capacity > 2 * getCapacity();
+	}
+}
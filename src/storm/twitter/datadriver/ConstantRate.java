@@ -0,0 +1,21 @@
+package storm.twitter.datadriver;
+
+/**
+ * The same rate at every second.
+ */
+public class ConstantRate implements RateProfile {
+	
+	private final double rate;
+	
+	public ConstantRate(double rate) {
+		this.rate = rate;
+	}
+	
+	public double getRate(int second) {
+		return rate;
+	}
+	
+	public int getSeconds() {
+		return 0;
+	}
+}
@@ -0,0 +1,63 @@
+package storm.twitter.datadriver;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.util.Arrays;
+
+/**
+ * A rate curve read from a CSV file, with one "second,rate" line per point 
+ * of the curve or just one "rate" line per second. The rate of a point 
+ * holds until the next point, the curve ends after the last one. Empty 
+ * lines and lines starting with # are ignored.
+ */
+public class CsvRate implements RateProfile {
+	
+	private final double[] rates;
+	
+	public CsvRate(String filename) throws Exception {
+		double[] rates = new double[64];
+		int seconds = 0;
+		BufferedReader reader = new BufferedReader(new FileReader(filename));
+		try {
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#"))
+					continue;
+				String[] fields = line.split("\\s*,\\s*");
+				int second;
+				double rate;
+				try {
+					second = fields.length > 1 ? Integer.parseInt(fields[0]) : seconds;
+					rate = Double.parseDouble(fields[fields.length - 1]);
+				} catch (NumberFormatException e) {
+					throw new Exception("Invalid rate at line " + lineNumber + " of " + filename + ": " + line);
+				}
+				if (second < seconds)
+					throw new Exception("Second " + second + " out of order at line " + lineNumber + " of " + filename);
+				if (second >= rates.length)
+					rates = Arrays.copyOf(rates, Math.max(second + 1, 2 * rates.length));
+				// the previous point holds until this one
+				if (seconds > 0)
+					Arrays.fill(rates, seconds, second, rates[seconds - 1]);
+				rates[second] = rate;
+				seconds = second + 1;
+			}
+		} finally {
+			reader.close();
+		}
+		if (seconds == 0)
+			throw new Exception("No rate in " + filename);
+		this.rates = Arrays.copyOf(rates, seconds);
+	}
+	
+	public double getRate(int second) {
+		return second < rates.length ? rates[second] : 0;
+	}
+	
+	public int getSeconds() {
+		return rates.length;
+	}
+}
@@ -0,0 +1,42 @@
+package storm.twitter.datadriver;
+
+import com.beust.jcommander.Parameter;
+
+public class DataConsumerParameters {
+	
+	@Parameter(names = { "-jsh", "-jms-server-host" }, description = "hostname of the JMS server where tuples have to be received from (default: 127.0.0.1)")
+	public String jmsServerHost = "127.0.0.1";
+	
+	@Parameter(names = { "-qn", "-queue-name" }, description = "name of the JMS queue, looked up as /queue/<name>, or of the shard queues /queue/<name>-<shard> (default: tweetQueue)")
+	public String queueName = "tweetQueue";
+	
+	@Parameter(names = { "-sh", "-shards" }, description = "number of shard queues, consumer i consuming shard i modulo shards (default: 1)")
+	public Integer shards = 1;
+	
+	@Parameter(names = { "-sel", "-selector" }, description = "message selector of the consumers, e.g. shard = 0")
+	public String selector = null;
+	
+	@Parameter(names = { "-c", "-consumers" }, description = "number of consumers, each with its own JMS session (default: 1)")
+	public Integer consumers = 1;
+	
+	@Parameter(names = { "-m", "-mode" }, description = "how messages are consumed: listener (asynchronous MessageListener) or receive (a thread per consumer looping on receive()) (default: listener)")
+	public String mode = "listener";
+	
+	@Parameter(names = { "-am", "-ack-mode" }, description = "acknowledge mode of the sessions: auto, dups_ok or client (default: dups_ok)")
+	public String ackMode = "dups_ok";
+	
+	@Parameter(names = { "-ab", "-ack-batch" }, description = "messages per acknowledge() in client ack mode (default: 100)")
+	public Integer ackBatch = 100;
+	
+	@Parameter(names = { "-d", "-duration" }, description = "how long (in s) to consume, 0 to consume until killed (default: 0)")
+	public Integer duration = 0;
+	
+	@Parameter(names = { "-lt", "-log-throughput" }, arity = 1, description = "flag to whether to log received messages and latency to file second by second (default: false)")
+	public boolean logThroughput = false;
+	
+	@Parameter(names = { "-lm", "-log-messages" }, arity = 1, description = "flag to whether to log the body of every message at DEBUG level, which limits the throughput (default: false)")
+	public boolean logMessages = false;
+	
+	@Parameter(names = { "-l", "-log4j" }, description = "path of the log4j configuration file")
+	public String log4j = "data-consumer-log4j.properties";
+}
@@ -10,26 +10,143 @@ public class DataDriverParameters {
 	@Parameter(names = { "-jsp", "-jms-server-port" }, description = "TCP port of the JMS server (default: 5445)")
 	public Integer jmsServerPort = 5445;
 	
-	@Parameter(names = { "-ddf", "-data-driver-filename" }, description = "path of the file containing car data points", required = true)
+	@Parameter(names = { "-sk", "-sink" }, description = "where tuples are sent: jms, queue (in-memory queue named -queue-name, for consumers in the same JVM), stream (file or socket given by -sink-address) or null (dropped, to measure the driver alone) (default: jms)")
+	public String sink = "jms";
+	
+	@Parameter(names = { "-sa", "-sink-address" }, description = "file:<path> or socket:<host>:<port> the stream sink writes tuples to, one per line")
+	public String sinkAddress = null;
+	
+	@Parameter(names = { "-sqc", "-sink-queue-capacity" }, description = "capacity of the in-memory queue of the queue sink, a full queue blocks the driver (default: 100000)")
+	public Integer sinkQueueCapacity = 100000;
+	
+	@Parameter(names = { "-as", "-async-sends" }, arity = 1, description = "flag to whether to enable the asynchronous sends of the JMS provider (HornetQ or ActiveMQ), so that send() does not wait for the broker to acknowledge each message; disables rate control, which relies on the send latency (default: false)")
+	public boolean asyncSends = false;
+	
+	@Parameter(names = { "-asw", "-async-send-window" }, description = "with asynchronous sends, how many bytes per producer may be sent and not yet acknowledged by the broker before send() blocks (the producer window of the provider) (default: 1048576)")
+	public Integer asyncSendWindow = 1 << 20;
+	
+	@Parameter(names = { "-pk", "-pack-size" }, description = "how many tuples to pack at most into each JMS message, as a compressed envelope (see EnvelopeDecoder), 0 to send each tuple as its own message; envelopes are also sent at the end of each pacing batch, so raise -min-gap to pack more tuples at low rates (default: 0)")
+	public Integer packSize = 0;
+	
+	@Parameter(names = { "-pc", "-pack-codec" }, description = "compression of packed tuples: lz4, deflate or none (default: lz4)")
+	public String packCodec = "lz4";
+	
+	@Parameter(names = { "-dm", "-delivery-mode" }, description = "JMS delivery mode: persistent or non_persistent, which spares the broker a write to its store per message (default: persistent)")
+	public String deliveryMode = "persistent";
+	
+	@Parameter(names = { "-dmi", "-disable-message-id" }, arity = 1, description = "flag to whether to hint the JMS provider not to generate message IDs (default: false)")
+	public boolean disableMessageId = false;
+	
+	@Parameter(names = { "-dmt", "-disable-message-timestamp" }, arity = 1, description = "flag to whether to hint the JMS provider not to generate message timestamps (default: false)")
+	public boolean disableMessageTimestamp = false;
+	
+	@Parameter(names = { "-sst", "-stamp-send-time" }, arity = 1, description = "flag to whether to stamp each JMS message with its send time (us since the epoch) in the sendTime property, for consumers to measure end-to-end latency (default: true)")
+	public boolean stampSendTime = true;
+	
+	@Parameter(names = { "-qn", "-queue-name" }, description = "name of the JMS queue, looked up as /queue/<name>, or of the shard queues /queue/<name>-<shard> when sharding across queues (default: tweetQueue)")
+	public String queueName = "tweetQueue";
+	
+	@Parameter(names = { "-sh", "-shards" }, description = "number of shards the tuples are partitioned into by key (default: 1)")
+	public Integer shards = 1;
+	
+	@Parameter(names = { "-sm", "-shard-mode" }, description = "how shards are delivered: queues sends each shard to its own queue, property sends all of them to one queue setting the shard in a JMS property for selectors (default: queues)")
+	public String shardMode = "queues";
+	
+	@Parameter(names = { "-sp", "-shard-property" }, description = "name of the int JMS property holding the shard in property mode (default: shard)")
+	public String shardProperty = "shard";
+	
+	@Parameter(names = { "-kf", "-key-field" }, description = "index (from 0) of the field, separated by -field-separator, holding the sharding key, e.g. the user ID (default: -1, none)")
+	public Integer keyField = -1;
+	
+	@Parameter(names = { "-kp", "-key-pattern" }, description = "regular expression whose first group is the sharding key, e.g. #(\\w+) for the first hashtag; takes precedence over -key-field")
+	public String keyPattern = null;
+	
+	@Parameter(names = { "-nc", "-node-count" }, description = "number of driver instances sharing the dataset, each sending a disjoint slice of every second (default: 1)")
+	public Integer nodeCount = 1;
+	
+	@Parameter(names = { "-ni", "-node-index" }, description = "index of this instance, from 0 to node count - 1; instance 0 is the coordinator (default: 0)")
+	public Integer nodeIndex = 0;
+	
+	@Parameter(names = { "-nsl", "-node-slice" }, description = "how seconds are sliced among instances: index (tuple index modulo node count) or hash (of the key given by -key-field or -key-pattern, of the whole tuple otherwise) (default: index)")
+	public String nodeSlice = "index";
+	
+	@Parameter(names = { "-ca", "-coordinator-address" }, description = "host:port where instance 0 coordinates the start of all instances and aggregates their throughput")
+	public String coordinatorAddress = null;
+	
+	@Parameter(names = { "-st", "-start-time" }, description = "wall-clock time (ms since the epoch) when to start the first second, to align instances without a coordinator (default: 0, start straight away)")
+	public Long startTime = 0L;
+	
+	@Parameter(names = { "-ddf", "-data-driver-filename" }, description = "path of the file containing car data points; with the synthetic dataset type, the optional corpus payloads are sampled from")
 	public String dataDriverfilename;
 	
+	@Parameter(names = { "-dra", "-decompression-read-ahead" }, description = "how many 1MB chunks of a compressed dataset (.gz, .zst, .lz4) a background thread decompresses ahead of the reader, 0 to decompress in the reader thread (default: 8)")
+	public Integer readAhead = 8;
+	
+	@Parameter(names = { "-dt", "-dataset-type" }, description = "type of the dataset: tweets, tuples whose timestamp may be in a field given by -timestamp-field, binary for a replay file built by ReplayFile, sent as BytesMessages, or synthetic to generate tuples at the rate given by -rate-profile (default: tweets)")
+	public String datasetType = "tweets";
+	
+	@Parameter(names = { "-tf", "-timestamp-field" }, description = "index (from 0) of the field holding the timestamp (in ms) of tuple datasets, -1 if lines start with it as tweets do (default: -1)")
+	public Integer timestampField = -1;
+	
+	@Parameter(names = { "-fs", "-field-separator" }, description = "character separating the fields of tuple datasets (default: ,)")
+	public String fieldSeparator = ",";
+	
+	@Parameter(names = { "-rp", "-rate-profile" }, description = "rate (tuples/s) of the synthetic dataset type: constant:rate, ramp:from:to:seconds, step:from:increment:every, spike:base:peak:at:duration, sine:mean:amplitude:period or csv:filename of second,rate lines (default: constant:1000)")
+	public String rateProfile = "constant:1000";
+	
+	@Parameter(names = { "-gt", "-generator-template" }, description = "template of the synthetic tuples, where {ts} stands for their timestamp, {seq} for their sequence number and {payload} for a line sampled from the corpus (default: {ts}, {payload} with a corpus, {ts}, tweet {seq} without)")
+	public String generatorTemplate = null;
+	
+	@Parameter(names = { "-gs", "-generator-seed" }, description = "seed of the sampling of corpus lines, for repeatable synthetic runs (default: 0)")
+	public Long generatorSeed = 0L;
+	
 	@Parameter(names = { "-lt", "-log-throughput" }, arity = 1, description = "flag to whether to log throughput to file second by second (default: false)")
 	public boolean logThroughput = false;
 	
 	@Parameter(names = { "-sts", "-seconds-to-skip" }, description = "number of seconds of dataset to skip (default: 0)")
 	public Integer secondsToSkip = 0;
 	
-	@Parameter(names = { "-mts", "-max-tweet-per-second" }, description = "max tweet per second in the dataset (default: 2000)")
+	@Parameter(names = { "-str", "-seconds-to-replay" }, description = "number of seconds of dataset to replay after the skipped ones, 0 to replay until the end (default: 0)")
+	public Integer secondsToReplay = 0;
+	
+	@Parameter(names = { "-lo", "-loop" }, arity = 1, description = "flag to whether to loop over the replayed seconds endlessly, shifting timestamps by the length of the replay at each loop so that they keep increasing; not available for binary replay files (default: false)")
+	public boolean loop = false;
+	
+	@Parameter(names = { "-ui", "-use-index" }, arity = 1, description = "flag to whether to use the dataset index (<dataset>.idx), when available, to seek skipped seconds and size buffers (default: true)")
+	public boolean useIndex = true;
+	
+	@Parameter(names = { "-pd", "-prefetch-depth" }, description = "how many seconds of dataset to read ahead of the one being sent (default: 2)")
+	public Integer prefetchDepth = 2;
+	
+	@Parameter(names = { "-mts", "-max-tweet-per-second" }, description = "initial size of the per-second buffers, which grow when a second holds more tweets (default: 2000)")
 	public Integer maxTweetPerSecond = 2000;
 	
 	@Parameter(names = { "-trf", "-tweet-replication-factor" }, description = "How many tweets to emit from the spout for each tweet received from the JMS queue? (default: 1)")
 	public int tweetReplicationFactor = 1;
 	
-	@Parameter(names = { "-stt", "-sleep-time-threshold" }, description = "threshold (in ms) for deciding whether to sleep or to wait (default: 50)")
-	public Integer sleepTimeThreshold = 50;
+	@Parameter(names = { "-rm", "-replication-mode" }, description = "how replicas of a tweet differ: identical, or suffix to append the separator and the index of the replica to all replicas but the first, so that each message is distinct (default: identical)")
+	public String replicationMode = "identical";
 	
-	@Parameter(names = { "-mst", "-min-sleep-time" }, description = "minimum slee time (in ms) allowed before starting to batch tuples (default: 10)")
-	public Integer minSleepTime = 10;
+	@Parameter(names = { "-rs", "-replica-separator" }, description = "separator between a replicated tweet and the index of the replica (default: #)")
+	public String replicaSeparator = "#";
+	
+	@Parameter(names = { "-sf", "-speed-factor" }, description = "replay speed with respect to the dataset time, e.g. 2 replays a second of dataset in half a second, 0 sends as fast as possible (default: 1)")
+	public Double speedFactor = 1.0;
+	
+	@Parameter(names = { "-rc", "-rate-control" }, arity = 1, description = "flag to whether to adapt windows and batching to the achieved send rate in order to catch up with the schedule (default: true)")
+	public boolean rateControl = true;
+	
+	@Parameter(names = { "-mcu", "-max-catch-up" }, description = "how much (%) the window of a late second may be shortened to catch up (default: 50)")
+	public Integer maxCatchUp = 50;
+	
+	@Parameter(names = { "-ps", "-pacing-strategy" }, description = "how tuples are spread within each second: uniform, poisson or replay of the dataset milliseconds (default: uniform)")
+	public String pacingStrategy = "uniform";
+	
+	@Parameter(names = { "-spt", "-spin-threshold" }, description = "how long (in us) before a deadline the pacer stops parking and starts busy waiting (default: 100)")
+	public Integer spinThreshold = 100;
+	
+	@Parameter(names = { "-mg", "-min-gap" }, description = "minimum gap (in us) between two waits of the pacer, shorter gaps make tuples be sent in batches (default: 100)")
+	public Integer minGap = 100;
 	
 	@Parameter(names = { "-stat", "-sleep-time-accuracy-tolerance" }, description = "tolerance (%) in the accuracy of real sleep time wrt to expected sleep time (default: 5)")
 	public Integer sleepTimeAccuracyTolerance = 5;
@@ -37,6 +154,18 @@ public class DataDriverParameters {
 	@Parameter(names = { "-stac", "-sleep-time-accuracy-check" }, arity = 1, description = "flag to check or not sleep time accuracy (default: false)")
 	public boolean sleepTimeAccuracyCheck = false;
 	
+	@Parameter(names = { "-ts", "-transacted-sends" }, arity = 1, description = "flag to whether to group sends into transacted session commits (default: false)")
+	public boolean transactedSends = false;
+	
+	@Parameter(names = { "-tbs", "-transaction-batch-size" }, description = "tweets per commit when transacted sends are enabled, or per flush of sinks that buffer, 0 to commit once per pacing batch (default: 0)")
+	public Integer transactionBatchSize = 0;
+	
+	@Parameter(names = { "-pt", "-producer-threads" }, description = "number of threads sending tweets, each with its own JMS session and producer (default: 1)")
+	public Integer producerThreads = 1;
+	
+	@Parameter(names = { "-mi", "-metrics-interval" }, description = "interval (in s) between two logs of the latency metrics, 0 to log them only at the end; the metrics exposed through JMX are renewed every 10 s regardless (default: 10)")
+	public Integer metricsInterval = 10;
+	
 	@Parameter(names = { "-l", "-log4j" }, description = "path of the log4j configuration file")
 	public String log4j = "log4j.properties";
 }
@@ -0,0 +1,226 @@
+package storm.twitter.datadriver;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.apache.log4j.Logger;
+
+/**
+ * Latency and timing metrics of the driver, recorded in HdrHistogram 
+ * Recorders so that producers, the prefetcher and the driver thread can
+ * record concurrently without locking:
+ * - send latency: time spent in each sender.send(), which does not wait
+ *   for the broker with asynchronous sends
+ * - pacing error: how late the pacer woke up with respect to a deadline
+ * - lag: how late each second started with respect to the schedule, 
+ *   not recorded when unthrottled since there is no schedule
+ * - read time: how long the prefetcher took to read each second
+ * All values are recorded in ns. Every ROLL_INTERVAL, whatever the 
+ * logging interval, roll() moves the recorded values to the snapshot 
+ * exposed through JMX, to the values of the logging interval, logged in 
+ * one compact line by logInterval(), and to the totals logged at the end.
+ */
+public class DriverMetrics implements DriverMetricsMBean {
+	
+	public static final String OBJECT_NAME = "storm.twitter.datadriver:type=DriverMetrics";
+	
+	/**
+	 * how often (in ns) the snapshot exposed through JMX is renewed
+	 */
+	public static final long ROLL_INTERVAL = 10 * Pacer.NANOS_PER_SECOND;
+	
+	private static final int SIGNIFICANT_DIGITS = 3;
+	
+	private final Recorder sendLatency = new Recorder(SIGNIFICANT_DIGITS);
+	private final Recorder pacingError = new Recorder(SIGNIFICANT_DIGITS);
+	private final Recorder lag = new Recorder(SIGNIFICANT_DIGITS);
+	private final Recorder readTime = new Recorder(SIGNIFICANT_DIGITS);
+	
+	private volatile Histogram sendLatencyInterval = new Histogram(SIGNIFICANT_DIGITS);
+	private volatile Histogram pacingErrorInterval = new Histogram(SIGNIFICANT_DIGITS);
+	private volatile Histogram lagInterval = new Histogram(SIGNIFICANT_DIGITS);
+	private volatile Histogram readTimeInterval = new Histogram(SIGNIFICANT_DIGITS);
+	
+	private final Histogram sendLatencyLogged = new Histogram(SIGNIFICANT_DIGITS);
+	private final Histogram pacingErrorLogged = new Histogram(SIGNIFICANT_DIGITS);
+	private final Histogram lagLogged = new Histogram(SIGNIFICANT_DIGITS);
+	private final Histogram readTimeLogged = new Histogram(SIGNIFICANT_DIGITS);
+	
+	private final Histogram sendLatencyTotal = new Histogram(SIGNIFICANT_DIGITS);
+	private final Histogram pacingErrorTotal = new Histogram(SIGNIFICANT_DIGITS);
+	private final Histogram lagTotal = new Histogram(SIGNIFICANT_DIGITS);
+	private final Histogram readTimeTotal = new Histogram(SIGNIFICANT_DIGITS);
+	
+	private final AtomicLong tuplesSent = new AtomicLong();
+	private final AtomicLong secondsSent = new AtomicLong();
+	private volatile int lastSecond;
+	private long lastRoll = System.nanoTime();
+	
+	private Logger logger = Logger.getLogger(DriverMetrics.class);
+	
+	public void recordSendLatency(long nanos) {
+		sendLatency.recordValue(Math.max(0, nanos));
+	}
+	
+	public void recordPacingError(long nanos) {
+		pacingError.recordValue(Math.max(0, nanos));
+	}
+	
+	public void recordLag(long nanos) {
+		lag.recordValue(Math.max(0, nanos));
+	}
+	
+	public void recordReadTime(long nanos) {
+		readTime.recordValue(Math.max(0, nanos));
+	}
+	
+	/**
+	 * @param second the second of dataset just sent
+	 * @param tuples the tuples sent for it
+	 */
+	public void recordSecond(int second, int tuples) {
+		tuplesSent.addAndGet(tuples);
+		secondsSent.incrementAndGet();
+		lastSecond = second;
+	}
+	
+	/**
+	 * Register this object with the platform MBean server.
+	 */
+	public void registerMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name))
+				server.unregisterMBean(name);
+			server.registerMBean(this, name);
+			logger.info("Metrics exposed through JMX as " + OBJECT_NAME);
+		} catch (Exception e) {
+			logger.warn("Cannot expose metrics through JMX", e);
+		}
+	}
+	
+	/**
+	 * Roll if ROLL_INTERVAL has elapsed since the last roll.
+	 */
+	public synchronized void rollIfDue() {
+		if (System.nanoTime() - lastRoll >= ROLL_INTERVAL)
+			roll();
+	}
+	
+	/**
+	 * Close the current interval: its values become the ones exposed 
+	 * through JMX and are added to the logging interval and the totals.
+	 */
+	public synchronized void roll() {
+		lastRoll = System.nanoTime();
+		sendLatencyInterval = sendLatency.getIntervalHistogram();
+		pacingErrorInterval = pacingError.getIntervalHistogram();
+		lagInterval = lag.getIntervalHistogram();
+		readTimeInterval = readTime.getIntervalHistogram();
+		sendLatencyTotal.add(sendLatencyInterval);
+		pacingErrorTotal.add(pacingErrorInterval);
+		lagTotal.add(lagInterval);
+		readTimeTotal.add(readTimeInterval);
+		sendLatencyLogged.add(sendLatencyInterval);
+		pacingErrorLogged.add(pacingErrorInterval);
+		lagLogged.add(lagInterval);
+		readTimeLogged.add(readTimeInterval);
+	}
+	
+	/**
+	 * Roll, then log the values since the last call in one line.
+	 */
+	public synchronized void logInterval() {
+		roll();
+		logger.info("[Metrics] second " + lastSecond + ", " + tuplesSent.get() + " tuples sent | " + 
+			format(sendLatencyLogged, pacingErrorLogged, lagLogged, readTimeLogged));
+		sendLatencyLogged.reset();
+		pacingErrorLogged.reset();
+		lagLogged.reset();
+		readTimeLogged.reset();
+	}
+	
+	/**
+	 * Log the values of the whole run in one line.
+	 */
+	public synchronized void logSummary() {
+		logger.info("[Metrics] total: " + secondsSent.get() + " seconds, " + tuplesSent.get() + " tuples sent | " + 
+			format(sendLatencyTotal, pacingErrorTotal, lagTotal, readTimeTotal));
+	}
+	
+	private static String format(Histogram sendLatency, Histogram pacingError, Histogram lag, Histogram readTime) {
+		return 
+			"send latency (us) " + format(sendLatency, 1000) + " | " + 
+			"pacing error (us) " + format(pacingError, 1000) + " | " + 
+			"lag (ms) " + format(lag, 1000000) + " | " + 
+			"read time (ms) " + format(readTime, 1000000);
+	}
+	
+	private static String format(Histogram histogram, long unit) {
+		if (histogram.getTotalCount() == 0)
+			return "-";
+		return 
+			"p50 " + histogram.getValueAtPercentile(50) / unit + 
+			" p99 " + histogram.getValueAtPercentile(99) / unit + 
+			" p99.9 " + histogram.getValueAtPercentile(99.9) / unit + 
+			" max " + histogram.getMaxValue() / unit;
+	}
+	
+	public long getTuplesSent() {
+		return tuplesSent.get();
+	}
+	
+	public long getSecondsSent() {
+		return secondsSent.get();
+	}
+	
+	public int getLastSecond() {
+		return lastSecond;
+	}
+	
+	public long getSendLatencyP50Micros() {
+		return sendLatencyInterval.getValueAtPercentile(50) / 1000;
+	}
+	
+	public long getSendLatencyP99Micros() {
+		return sendLatencyInterval.getValueAtPercentile(99) / 1000;
+	}
+	
+	public long getSendLatencyMaxMicros() {
+		return sendLatencyInterval.getMaxValue() / 1000;
+	}
+	
+	public long getPacingErrorP50Micros() {
+		return pacingErrorInterval.getValueAtPercentile(50) / 1000;
+	}
+	
+	public long getPacingErrorP99Micros() {
+		return pacingErrorInterval.getValueAtPercentile(99) / 1000;
+	}
+	
+	public long getPacingErrorMaxMicros() {
+		return pacingErrorInterval.getMaxValue() / 1000;
+	}
+	
+	public long getLagP50Millis() {
+		return lagInterval.getValueAtPercentile(50) / 1000000;
+	}
+	
+	public long getLagMaxMillis() {
+		return lagInterval.getMaxValue() / 1000000;
+	}
+	
+	public long getReadTimeP50Millis() {
+		return readTimeInterval.getValueAtPercentile(50) / 1000000;
+	}
+	
+	public long getReadTimeMaxMillis() {
+		return readTimeInterval.getMaxValue() / 1000000;
+	}
+}
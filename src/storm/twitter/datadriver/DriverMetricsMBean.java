@@ -0,0 +1,34 @@
+package storm.twitter.datadriver;
+
+/**
+ * JMX view of DriverMetrics. Percentiles refer to the last completed 
+ * metrics interval, counters to the whole run.
+ */
+public interface DriverMetricsMBean {
+	
+	public long getTuplesSent();
+	
+	public long getSecondsSent();
+	
+	public int getLastSecond();
+	
+	public long getSendLatencyP50Micros();
+	
+	public long getSendLatencyP99Micros();
+	
+	public long getSendLatencyMaxMicros();
+	
+	public long getPacingErrorP50Micros();
+	
+	public long getPacingErrorP99Micros();
+	
+	public long getPacingErrorMaxMicros();
+	
+	public long getLagP50Millis();
+	
+	public long getLagMaxMillis();
+	
+	public long getReadTimeP50Millis();
+	
+	public long getReadTimeMaxMillis();
+}
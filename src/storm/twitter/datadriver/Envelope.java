@@ -0,0 +1,159 @@
+package storm.twitter.datadriver;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+
+/**
+ * Packs several tuples into a single compressed payload, sent as one 
+ * BytesMessage, so that the per-message cost of the broker is paid once 
+ * for all of them. Unpack it with EnvelopeDecoder. Layout (big-endian):
+ * <pre>
+ * int magic, byte codec, int record count, int raw length
+ * body: record count x (int length, record), compressed with the codec
+ * </pre>
+ * Text tuples are encoded as UTF-8, the replica suffix, if any, follows
+ * the record in the same record. An envelope is reused from one payload
+ * to the next, see reset().
+ */
+public class Envelope {
+	
+	static final int MAGIC = 0x54444550; // "TDEP"
+	static final int HEADER_SIZE = 13;
+	
+	static final byte NONE = 0;
+	static final byte LZ4 = 1;
+	static final byte DEFLATE = 2;
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private final byte codec;
+	private final LZ4Compressor lz4Compressor;
+	private final Deflater deflater;
+	
+	/**
+	 * the records packed so far, uncompressed
+	 */
+	private byte[] raw = new byte[1 << 16];
+	private int rawLength;
+	private int count;
+	
+	/**
+	 * header and compressed body, see encode()
+	 */
+	private byte[] payload = new byte[1 << 16];
+	
+	/**
+	 * @param codec none, lz4 or deflate
+	 */
+	public Envelope(String codec) {
+		if ("none".equals(codec))
+			this.codec = NONE;
+		else if ("lz4".equals(codec))
+			this.codec = LZ4;
+		else if ("deflate".equals(codec))
+			this.codec = DEFLATE;
+		else
+			throw new IllegalArgumentException("Unknown envelope codec: " + codec);
+		lz4Compressor = this.codec == LZ4 ? LZ4Factory.fastestInstance().fastCompressor() : null;
+		deflater = this.codec == DEFLATE ? new Deflater(Deflater.BEST_SPEED) : null;
+	}
+	
+	/**
+	 * Empty this envelope, so that it can pack the next tuples.
+	 */
+	public void reset() {
+		rawLength = 0;
+		count = 0;
+	}
+	
+	/**
+	 * @param tuple a String or a Payload
+	 * @param suffix to append to the tuple, null if none
+	 */
+	public void add(Object tuple, ReplicaSuffix suffix) {
+		byte[] bytes;
+		int offset, bytesLength;
+		if (tuple instanceof Payload) {
+			Payload payload = (Payload)tuple;
+			bytes = payload.getArray();
+			offset = payload.getOffset();
+			bytesLength = payload.getLength();
+		} else {
+			bytes = ((String)tuple).getBytes(UTF8);
+			offset = 0;
+			bytesLength = bytes.length;
+		}
+		int suffixLength = suffix != null ? suffix.getBytes().length : 0;
+		int length = bytesLength + suffixLength;
+		if (rawLength + 4 + length > raw.length)
+			raw = Arrays.copyOf(raw, Math.max(rawLength + 4 + length, 2 * raw.length));
+		writeInt(raw, rawLength, length);
+		System.arraycopy(bytes, offset, raw, rawLength + 4, bytesLength);
+		if (suffix != null)
+			System.arraycopy(suffix.getBytes(), 0, raw, rawLength + 4 + bytesLength, suffixLength);
+		rawLength += 4 + length;
+		count++;
+	}
+	
+	/**
+	 * @return the number of tuples packed so far
+	 */
+	public int getCount() {
+		return count;
+	}
+	
+	/**
+	 * Compress the tuples packed so far.
+	 * 
+	 * @return the length of the payload, see getPayload()
+	 */
+	public int encode() {
+		int maxLength = HEADER_SIZE + (codec == LZ4 ? lz4Compressor.maxCompressedLength(rawLength) : rawLength + (rawLength >> 4) + 64);
+		if (payload.length < maxLength)
+			payload = new byte[Math.max(maxLength, 2 * payload.length)];
+		writeInt(payload, 0, MAGIC);
+		payload[4] = codec;
+		writeInt(payload, 5, count);
+		writeInt(payload, 9, rawLength);
+		int length;
+		if (codec == LZ4)
+			length = lz4Compressor.compress(raw, 0, rawLength, payload, HEADER_SIZE, payload.length - HEADER_SIZE);
+		else if (codec == DEFLATE) {
+			deflater.reset();
+			deflater.setInput(raw, 0, rawLength);
+			deflater.finish();
+			length = 0;
+			while (!deflater.finished()) {
+				if (HEADER_SIZE + length == payload.length)
+					payload = Arrays.copyOf(payload, 2 * payload.length);
+				length += deflater.deflate(payload, HEADER_SIZE + length, payload.length - HEADER_SIZE - length);
+			}
+		} else {
+			System.arraycopy(raw, 0, payload, HEADER_SIZE, rawLength);
+			length = rawLength;
+		}
+		return HEADER_SIZE + length;
+	}
+	
+	/**
+	 * @return the payload built by the last encode()
+	 */
+	public byte[] getPayload() {
+		return payload;
+	}
+	
+	static void writeInt(byte[] bytes, int offset, int value) {
+		bytes[offset] = (byte)(value >>> 24);
+		bytes[offset + 1] = (byte)(value >>> 16);
+		bytes[offset + 2] = (byte)(value >>> 8);
+		bytes[offset + 3] = (byte)value;
+	}
+	
+	static int readInt(byte[] bytes, int offset) {
+		return (bytes[offset] & 0xff) << 24 | (bytes[offset + 1] & 0xff) << 16 | (bytes[offset + 2] & 0xff) << 8 | (bytes[offset + 3] & 0xff);
+	}
+}
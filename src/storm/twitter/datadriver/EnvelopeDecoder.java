@@ -0,0 +1,198 @@
+package storm.twitter.datadriver;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+/**
+ * Unpacks the tuples of an Envelope, e.g. in a spout or in 
+ * TwitterDataConsumer: decode() a payload (or a BytesMessage), then read
+ * its getCount() records with getLine() or getRecord(), or in place 
+ * through getBuffer(), getOffset() and getLength(). A decoder reuses its 
+ * buffers from one envelope to the next, so each thread should own one.
+ */
+public class EnvelopeDecoder {
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	/**
+	 * how many times larger than its compressed data an envelope can be, 
+	 * DEFLATE's maximum ratio, above LZ4's
+	 */
+	private static final int MAX_EXPANSION = 1032;
+	
+	private LZ4SafeDecompressor lz4Decompressor;
+	private Inflater inflater;
+	
+	private byte[] payload = new byte[1 << 16];
+	private byte[] raw = new byte[1 << 16];
+	private int[] offsets = new int[1024];
+	private int count;
+	
+	/**
+	 * @param payload
+	 * @param length
+	 * @return whether the given payload is an envelope
+	 */
+	public static boolean isEnvelope(byte[] payload, int length) {
+		return length >= Envelope.HEADER_SIZE && Envelope.readInt(payload, 0) == Envelope.MAGIC;
+	}
+	
+	/**
+	 * Read the body of the given message and decode it.
+	 * 
+	 * @param message
+	 * @return the number of records in the envelope, or -1 if the message is
+	 * not an envelope
+	 * @throws JMSException
+	 * @throws IOException
+	 */
+	public int decode(BytesMessage message) throws JMSException, IOException {
+		int length = (int)message.getBodyLength();
+		// peek at the magic first, so that other payloads are not read
+		if (length < Envelope.HEADER_SIZE)
+			return -1;
+		boolean envelope = message.readInt() == Envelope.MAGIC;
+		message.reset();
+		if (!envelope)
+			return -1;
+		if (payload.length < length)
+			payload = new byte[Math.max(length, 2 * payload.length)];
+		message.readBytes(payload, length);
+		return decode(payload, length);
+	}
+	
+	/**
+	 * @param payload an envelope
+	 * @param length the length of the envelope
+	 * @return the number of records in the envelope, or -1 if it is not an 
+	 * envelope
+	 * @throws IOException if the envelope is corrupted
+	 */
+	public int decode(byte[] payload, int length) throws IOException {
+		if (!isEnvelope(payload, length))
+			return -1;
+		byte codec = payload[4];
+		int count = Envelope.readInt(payload, 5);
+		int rawLength = Envelope.readInt(payload, 9);
+		// each record takes at least its 4-byte length
+		if (rawLength < 0 || count < 0 || count > rawLength / 4)
+			throw new IOException("Corrupted envelope");
+		if ((long)rawLength > (long)(length - Envelope.HEADER_SIZE) * MAX_EXPANSION)
+			throw new IOException("Corrupted envelope");
+		if (raw.length < rawLength)
+			raw = new byte[Math.max(rawLength, 2 * raw.length)];
+		
+		if (codec == Envelope.LZ4) {
+			if (lz4Decompressor == null)
+				lz4Decompressor = LZ4Factory.fastestInstance().safeDecompressor();
+			int decompressed;
+			try {
+				// unlike the fast one, the safe decompressor checks the bounds of corrupted input
+				decompressed = lz4Decompressor.decompress(payload, Envelope.HEADER_SIZE, length - Envelope.HEADER_SIZE, raw, 0, rawLength);
+			} catch (RuntimeException e) {
+				throw new IOException("Corrupted envelope", e);
+			}
+			if (decompressed != rawLength)
+				throw new IOException("Corrupted envelope");
+		} else if (codec == Envelope.DEFLATE) {
+			if (inflater == null)
+				inflater = new Inflater();
+			inflater.reset();
+			inflater.setInput(payload, Envelope.HEADER_SIZE, length - Envelope.HEADER_SIZE);
+			try {
+				int inflated = 0;
+				while (inflated < rawLength) {
+					int n = inflater.inflate(raw, inflated, rawLength - inflated);
+					if (n == 0 && (inflater.finished() || inflater.needsInput()))
+						throw new IOException("Truncated envelope");
+					// envelopes never use a preset dictionary, only corrupted ones ask for one
+					if (n == 0 && inflater.needsDictionary())
+						throw new IOException("Corrupted envelope");
+					inflated += n;
+				}
+			} catch (DataFormatException e) {
+				throw new IOException("Corrupted envelope", e);
+			}
+		} else if (codec == Envelope.NONE) {
+			if (length - Envelope.HEADER_SIZE < rawLength)
+				throw new IOException("Truncated envelope");
+			System.arraycopy(payload, Envelope.HEADER_SIZE, raw, 0, rawLength);
+		} else
+			throw new IOException("Unknown envelope codec: " + codec);
+		
+		if (offsets.length < count + 1)
+			offsets = new int[Math.max(count + 1, 2 * offsets.length)];
+		int offset = 0;
+		for (int i = 0; i < count; i++) {
+			if (offset + 4 > rawLength)
+				throw new IOException("Corrupted envelope");
+			int recordLength = Envelope.readInt(raw, offset);
+			if (recordLength < 0 || recordLength > rawLength - offset - 4)
+				throw new IOException("Corrupted envelope");
+			offsets[i] = offset + 4;
+			offset += 4 + recordLength;
+		}
+		if (offset != rawLength)
+			throw new IOException("Corrupted envelope");
+		// the record i ends 4 bytes before the record i + 1 starts
+		offsets[count] = offset + 4;
+		this.count = count;
+		return count;
+	}
+	
+	/**
+	 * @return the number of records in the last envelope decoded
+	 */
+	public int getCount() {
+		return count;
+	}
+	
+	/**
+	 * @return the buffer holding the records of the last envelope decoded
+	 */
+	public byte[] getBuffer() {
+		return raw;
+	}
+	
+	/**
+	 * @param i
+	 * @return the offset of the i-th record in getBuffer()
+	 */
+	public int getOffset(int i) {
+		return offsets[i];
+	}
+	
+	/**
+	 * @param i
+	 * @return the length of the i-th record
+	 */
+	public int getLength(int i) {
+		return offsets[i + 1] - 4 - offsets[i];
+	}
+	
+	/**
+	 * @param i
+	 * @return a copy of the i-th record
+	 */
+	public byte[] getRecord(int i) {
+		byte[] record = new byte[getLength(i)];
+		System.arraycopy(raw, offsets[i], record, 0, record.length);
+		return record;
+	}
+	
+	/**
+	 * @param i
+	 * @return the i-th record, decoded as UTF-8
+	 */
+	public String getLine(int i) {
+		return new String(raw, offsets[i], getLength(i), UTF8);
+	}
+}
@@ -0,0 +1,20 @@
+package storm.twitter.datadriver;
+
+/**
+ * Wall-clock time in microseconds, as the epoch time at class loading plus
+ * the System.nanoTime() elapsed since, so that consecutive readings are as
+ * fine-grained and monotonic as nanoTime(). Readings of different 
+ * processes differ by the error of their currentTimeMillis() at loading, 
+ * about a millisecond on the same host, plus the clock offset across hosts.
+ */
+public class EpochClock {
+	
+	private static final long BASE_MICROS = System.currentTimeMillis() * 1000 - System.nanoTime() / 1000;
+	
+	/**
+	 * @return the current time (in us since the epoch)
+	 */
+	public static long currentTimeMicros() {
+		return BASE_MICROS + System.nanoTime() / 1000;
+	}
+}
@@ -0,0 +1,26 @@
+package storm.twitter.datadriver;
+
+/**
+ * The timestamp stored in a given field of delimited lines, e.g. a column
+ * of a CSV file.
+ */
+public class FieldTimestampExtractor implements TimestampExtractor {
+	
+	private final int field;
+	private final byte separator;
+	
+	/**
+	 * @param field the index of the field holding the timestamp (in ms), starting from 0
+	 * @param separator the character separating the fields, which must be ASCII
+	 */
+	public FieldTimestampExtractor(int field, char separator) {
+		if (separator > 127)
+			throw new IllegalArgumentException("Field separator must be an ASCII character: " + separator);
+		this.field = field;
+		this.separator = (byte)separator;
+	}
+	
+	public long getTimestamp(LineReader reader) throws Exception {
+		return reader.getLong(field, separator);
+	}
+}
@@ -0,0 +1,255 @@
+package storm.twitter.datadriver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Generates the tuples of each second instead of reading them from a 
+ * dataset, as many as a programmable RateProfile says, so that the rate
+ * can go beyond the curve of a recorded dataset, e.g. with a ramp or a 
+ * staircase to find the rate a topology saturates at.
+ * 
+ * Tuples are rendered from a template, whose placeholders are replaced by:
+ * - {ts}: the timestamp (ms since the epoch) of the tuple, within its second
+ * - {seq}: the sequence number of the tuple, from 0
+ * - {payload}: a line sampled at random from the corpus, i.e. the dataset 
+ *   given by -ddf, preloaded in memory. Lines starting with a timestamp, as
+ *   the ones of tweet datasets, are stripped of it.
+ * The default template, "{ts}, {payload}" with a corpus and 
+ * "{ts}, tweet {seq}" without, gives lines in the format of tweet datasets.
+ * Tuples of a second are spread evenly over its milliseconds, and the 
+ * first second starts at the start time given by -st, or when the source
+ * is created. In loop mode, the profile starts over once the generated 
+ * seconds are over, timestamps going on increasing.
+ */
+public class GeneratorSource implements SecondSource<String> {
+	
+	private static final int LITERAL = 0;
+	private static final int TIMESTAMP = 1;
+	private static final int SEQUENCE = 2;
+	private static final int PAYLOAD = 3;
+	
+	private final RateProfile profile;
+	private final int initialCapacity;
+	private final int replicationFactor;
+	private final long startMillis;
+	
+	/**
+	 * the template split in parts, each a literal or a placeholder
+	 */
+	private final int[] partTypes;
+	private final String[] parts;
+	
+	private final String[] corpus;
+	private final Random random;
+	private final StringBuilder builder = new StringBuilder(256);
+	
+	/**
+	 * the next second of the profile to generate, and the one to stop at
+	 * (-1 to go on forever)
+	 */
+	private int nextSecond;
+	private final int endSecond;
+	
+	/**
+	 * the second of the profile to go back to once endSecond is reached, 
+	 * -1 not to loop
+	 */
+	private final int loopSecond;
+	
+	/**
+	 * seconds generated so far, the numbering of the batches
+	 */
+	private int lastSecond;
+	
+	private long sequence;
+	
+	/**
+	 * fraction of tuple carried over from the previous seconds, so that 
+	 * fractional rates are met on average
+	 */
+	private double carry;
+	
+	private Logger logger = Logger.getLogger(GeneratorSource.class);
+	
+	public GeneratorSource(DataDriverParameters ddp) throws Exception {
+		profile = createRateProfile(ddp.rateProfile);
+		initialCapacity = ddp.maxTweetPerSecond;
+		replicationFactor = ddp.tweetReplicationFactor;
+		startMillis = ddp.startTime > 0 ? ddp.startTime : System.currentTimeMillis();
+		random = new Random(ddp.generatorSeed);
+		corpus = ddp.dataDriverfilename != null ? loadCorpus(ddp.dataDriverfilename, ddp.readAhead) : null;
+		
+		String template = ddp.generatorTemplate != null ? ddp.generatorTemplate : corpus != null ? "{ts}, {payload}" : "{ts}, tweet {seq}";
+		List<Integer> types = new ArrayList<Integer>();
+		List<String> literals = new ArrayList<String>();
+		int p = 0;
+		while (p < template.length()) {
+			int open = template.indexOf('{', p);
+			int close = open < 0 ? -1 : template.indexOf('}', open);
+			int type = LITERAL;
+			if (close > 0) {
+				String name = template.substring(open + 1, close);
+				if ("ts".equals(name))
+					type = TIMESTAMP;
+				else if ("seq".equals(name))
+					type = SEQUENCE;
+				else if ("payload".equals(name))
+					type = PAYLOAD;
+			}
+			if (type == LITERAL) {
+				// no placeholder (left), or an unknown one kept as it is
+				int end = close > 0 ? close + 1 : template.length();
+				types.add(LITERAL);
+				literals.add(template.substring(p, end));
+				p = end;
+				continue;
+			}
+			if (open > p) {
+				types.add(LITERAL);
+				literals.add(template.substring(p, open));
+			}
+			if (type == PAYLOAD && corpus == null)
+				throw new IllegalArgumentException("Template " + template + " samples payloads, but no corpus is given (-ddf)");
+			types.add(type);
+			literals.add(null);
+			p = close + 1;
+		}
+		partTypes = new int[types.size()];
+		for (int i = 0; i < partTypes.length; i++)
+			partTypes[i] = types.get(i);
+		parts = literals.toArray(new String[literals.size()]);
+		
+		nextSecond = ddp.secondsToSkip;
+		loopSecond = ddp.loop ? nextSecond : -1;
+		if (ddp.secondsToReplay > 0)
+			endSecond = nextSecond + ddp.secondsToReplay;
+		else if (profile.getSeconds() > 0)
+			endSecond = profile.getSeconds();
+		else
+			endSecond = -1;
+		if (endSecond >= 0 && nextSecond >= endSecond)
+			throw new Exception("Trying to skip " + ddp.secondsToSkip + ", but rate profile lasts " + profile.getSeconds() + " seconds");
+		logger.info("GeneratorSource created (rate profile: " + ddp.rateProfile + ", template: " + template + ", corpus: " + (corpus != null ? corpus.length + " lines" : "none") + ", seconds: " + (endSecond >= 0 ? String.valueOf(endSecond - nextSecond) : "unbounded") + ", replication factor: " + replicationFactor + ")");
+	}
+	
+	/**
+	 * @param spec one of constant:rate, ramp:from:to:seconds, 
+	 * step:from:increment:every, spike:base:peak:at:duration, 
+	 * sine:mean:amplitude:period, csv:filename
+	 * @return the rate profile given by spec
+	 * @throws Exception
+	 */
+	public static RateProfile createRateProfile(String spec) throws Exception {
+		int colon = spec.indexOf(':');
+		String name = colon < 0 ? spec : spec.substring(0, colon);
+		if ("csv".equals(name) && colon > 0)
+			return new CsvRate(spec.substring(colon + 1));
+		String[] fields = colon < 0 ? new String[0] : spec.substring(colon + 1).split(":");
+		double[] args = new double[fields.length];
+		try {
+			for (int i = 0; i < fields.length; i++)
+				args[i] = Double.parseDouble(fields[i]);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid rate profile: " + spec);
+		}
+		if ("constant".equals(name) && args.length == 1)
+			return new ConstantRate(args[0]);
+		if ("ramp".equals(name) && args.length == 3)
+			return new RampRate(args[0], args[1], (int)args[2]);
+		if ("step".equals(name) && args.length == 3)
+			return new StepRate(args[0], args[1], (int)args[2]);
+		if ("spike".equals(name) && args.length == 4)
+			return new SpikeRate(args[0], args[1], (int)args[2], (int)args[3]);
+		if ("sine".equals(name) && args.length == 3)
+			return new SineRate(args[0], args[1], (int)args[2]);
+		throw new IllegalArgumentException("Unknown rate profile: " + spec);
+	}
+	
+	/**
+	 * @param filename
+	 * @param readAhead
+	 * @return the lines of the given file, stripped of their leading timestamp
+	 * @throws Exception
+	 */
+	private String[] loadCorpus(String filename, int readAhead) throws Exception {
+		String[] lines = new String[1024];
+		int count = 0;
+		LineReader reader = LineReader.open(filename, readAhead);
+		try {
+			while (reader.nextLine()) {
+				String line = reader.getLine();
+				int p = 0;
+				while (p < line.length() && Character.isDigit(line.charAt(p)))
+					p++;
+				if (p > 0 && p < line.length() && line.charAt(p) == ',') {
+					p++;
+					while (p < line.length() && line.charAt(p) == ' ')
+						p++;
+					line = line.substring(p);
+				}
+				if (count == lines.length)
+					lines = Arrays.copyOf(lines, 2 * count);
+				lines[count++] = line;
+			}
+		} finally {
+			reader.close();
+		}
+		if (count == 0)
+			throw new Exception("Corpus " + filename + " is empty");
+		logger.info("Corpus of " + count + " lines loaded from " + filename);
+		return Arrays.copyOf(lines, count);
+	}
+	
+	public OneSecondBatch<String> newBatch() {
+		return new OneSecondBatch<String>(initialCapacity, replicationFactor);
+	}
+	
+	public <B extends OneSecondBatch<String>> B nextSecond(B batch) throws Exception {
+		batch.reset(lastSecond);
+		carry += profile.getRate(nextSecond);
+		int count = (int)carry;
+		carry -= count;
+		if (batch.getCapacity() < count || batch.getCapacity() > 2 * Math.max(count, initialCapacity))
+			batch.setCapacity(Math.max(count, initialCapacity));
+		
+		long secondMillis = startMillis + 1000L * lastSecond;
+		for (int i = 0; i < count; i++) {
+			int millis = (int)(1000L * i / count);
+			builder.setLength(0);
+			for (int j = 0; j < partTypes.length; j++) {
+				switch (partTypes[j]) {
+				case TIMESTAMP:
+					builder.append(secondMillis + millis);
+					break;
+				case SEQUENCE:
+					builder.append(sequence);
+					break;
+				case PAYLOAD:
+					builder.append(corpus[random.nextInt(corpus.length)]);
+					break;
+				default:
+					builder.append(parts[j]);
+				}
+			}
+			sequence++;
+			batch.add(builder.toString(), millis);
+		}
+		lastSecond++;
+		nextSecond++;
+		if (loopSecond >= 0 && nextSecond == endSecond)
+			nextSecond = loopSecond;
+		return batch;
+	}
+	
+	public boolean isEof() {
+		return loopSecond < 0 && endSecond >= 0 && nextSecond >= endSecond;
+	}
+	
+	public void close() throws Exception {
+	}
+}
@@ -0,0 +1,267 @@
+package storm.twitter.datadriver;
+
+import java.util.Properties;
+
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.DeliveryMode;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+import javax.naming.InitialContext;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Sends tuples to JMS queues over a single connection, each sender owning 
+ * its own session and producers. Text tuples are sent as TextMessages, 
+ * pre-encoded ones as BytesMessages. Shards go either to a queue each or
+ * to one queue, in an int property for selectors (see -shard-mode). With
+ * transacted sends, tuples are delivered to the broker when flushed.
+ * Delivery mode and the generation of message IDs and timestamps are set
+ * on the producers as configured, asynchronous sends on the connection 
+ * factory. With -pack-size, the tuples of each 
+ * shard are packed into compressed Envelopes sent as BytesMessages, an
+ * envelope being sent when full or when the sender is flushed, i.e. at 
+ * the latest at the end of each pacing batch. Each message carries its 
+ * send time (see SEND_TIME_PROPERTY) unless -stamp-send-time is off.
+ */
+public class JmsSink implements TupleSink {
+	
+	/**
+	 * long property holding when the message was sent (in us since the 
+	 * epoch, see EpochClock), for consumers to compute end-to-end latency
+	 */
+	public static final String SEND_TIME_PROPERTY = "sendTime";
+	
+	private final DataDriverParameters ddp;
+	private final Connection connection;
+	private final Queue[] queues;
+	
+	/**
+	 * whether the shard goes in a message property rather than selecting 
+	 * the queue
+	 */
+	private final boolean shardProperty;
+	
+	/**
+	 * DeliveryMode.PERSISTENT or NON_PERSISTENT
+	 */
+	private final int deliveryMode;
+	
+	/**
+	 * the JNDI context the queues were looked up in, if any
+	 */
+	private InitialContext context;
+	
+	private Logger logger = Logger.getLogger(JmsSink.class);
+	
+	/**
+	 * @param ddp
+	 * @param cf
+	 * @param queues one queue, or one queue per shard when sharding across queues
+	 * @throws Exception
+	 */
+	public JmsSink(DataDriverParameters ddp, ConnectionFactory cf, Queue[] queues) throws Exception {
+		this.ddp = ddp;
+		this.queues = queues;
+		boolean shardQueues = "queues".equals(ddp.shardMode);
+		if (!shardQueues && !"property".equals(ddp.shardMode))
+			throw new IllegalArgumentException("Unknown shard mode: " + ddp.shardMode);
+		int shards = Math.max(1, ddp.shards);
+		if (shardQueues && queues.length != shards)
+			throw new IllegalArgumentException(shards + " shards need as many queues, " + queues.length + " given");
+		this.shardProperty = !shardQueues;
+		if ("persistent".equals(ddp.deliveryMode))
+			deliveryMode = DeliveryMode.PERSISTENT;
+		else if ("non_persistent".equals(ddp.deliveryMode))
+			deliveryMode = DeliveryMode.NON_PERSISTENT;
+		else
+			throw new IllegalArgumentException("Unknown delivery mode: " + ddp.deliveryMode);
+		if (ddp.asyncSends)
+			enableAsyncSends(cf, ddp.asyncSendWindow);
+		
+		connection = cf.createConnection();
+		logger.info("Connection created!");
+	}
+	
+	/**
+	 * Make the producers of the given factory send asynchronously, i.e. not 
+	 * wait for the broker to acknowledge each message, with at most window 
+	 * bytes not acknowledged yet per producer. JMS 1.1 has no API for that, 
+	 * so the provider settings are set through reflection, before any 
+	 * connection is created: BlockOnDurableSend, BlockOnNonDurableSend and
+	 * ProducerWindowSize for HornetQ, UseAsyncSend and ProducerWindowSize 
+	 * for ActiveMQ.
+	 * 
+	 * @param cf
+	 * @param window
+	 * @throws Exception if the provider is not supported
+	 */
+	private void enableAsyncSends(ConnectionFactory cf, int window) throws Exception {
+		Class<?> type = cf.getClass();
+		if (hasMethod(type, "setBlockOnDurableSend", boolean.class)) {
+			type.getMethod("setBlockOnDurableSend", boolean.class).invoke(cf, false);
+			type.getMethod("setBlockOnNonDurableSend", boolean.class).invoke(cf, false);
+		} else if (hasMethod(type, "setUseAsyncSend", boolean.class))
+			type.getMethod("setUseAsyncSend", boolean.class).invoke(cf, true);
+		else
+			throw new IllegalArgumentException("Asynchronous sends are not supported by " + type.getName());
+		type.getMethod("setProducerWindowSize", int.class).invoke(cf, window);
+		logger.info("Asynchronous sends enabled on " + type.getSimpleName() + " (producer window: " + window + " bytes)");
+	}
+	
+	private static boolean hasMethod(Class<?> type, String name, Class<?> parameterType) {
+		try {
+			type.getMethod(name, parameterType);
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Look up the connection factory and the queues on the JBoss JNDI 
+	 * server given by ddp.jmsServerHost.
+	 * 
+	 * @param ddp
+	 * @return the sink to the looked up queues
+	 * @throws Exception
+	 */
+	public static JmsSink lookup(DataDriverParameters ddp) throws Exception {
+		Logger logger = Logger.getLogger(JmsSink.class);
+		Properties props = new Properties();
+		props.put("java.naming.factory.initial","org.jnp.interfaces.NamingContextFactory");
+		props.put("java.naming.provider.url", ddp.jmsServerHost);
+		props.put("java.naming.factory.url.pkgs","org.jboss.naming:org.jnp.interfaces");
+		InitialContext context = new InitialContext(props);
+		logger.info("Context created!");
+		
+		// one queue per shard when sharding across queues
+		int queueCount = "queues".equals(ddp.shardMode) ? Math.max(1, ddp.shards) : 1;
+		Queue[] queues = new Queue[queueCount];
+		for (int i = 0; i < queueCount; i++)
+			queues[i] = (Queue)context.lookup("/queue/" + ddp.queueName + (queueCount > 1 ? "-" + i : ""));
+		logger.info(queueCount + " Queue(s) looked up!");
+		
+		ConnectionFactory cf = (ConnectionFactory)context.lookup("/ConnectionFactory");
+		logger.info("Connection Factory looked up!");
+		
+		JmsSink sink = new JmsSink(ddp, cf, queues);
+		sink.context = context;
+		return sink;
+	}
+	
+	public TupleSender createSender() throws Exception {
+		return new JmsSender();
+	}
+	
+	public void close() throws Exception {
+		connection.close();
+		if (context != null)
+			context.close();
+	}
+	
+	private class JmsSender implements TupleSender {
+		
+		private final Session session;
+		
+		/**
+		 * one producer per queue, i.e. per shard when sharding across queues
+		 */
+		private final MessageProducer[] producers;
+		
+		private final boolean transacted;
+		private boolean uncommitted;
+		
+		/**
+		 * the tuples packed for each shard and not sent yet, null unless 
+		 * packing
+		 */
+		private final Envelope[] envelopes;
+		
+		public JmsSender() throws JMSException {
+			transacted = ddp.transactedSends;
+			session = connection.createSession(transacted, transacted ? Session.SESSION_TRANSACTED : Session.AUTO_ACKNOWLEDGE);
+			producers = new MessageProducer[queues.length];
+			for (int i = 0; i < queues.length; i++) {
+				producers[i] = session.createProducer(queues[i]);
+				producers[i].setDeliveryMode(deliveryMode);
+				producers[i].setDisableMessageID(ddp.disableMessageId);
+				producers[i].setDisableMessageTimestamp(ddp.disableMessageTimestamp);
+			}
+			if (ddp.packSize > 0) {
+				envelopes = new Envelope[Math.max(1, ddp.shards)];
+				for (int i = 0; i < envelopes.length; i++)
+					envelopes[i] = new Envelope(ddp.packCodec);
+			} else
+				envelopes = null;
+		}
+		
+		public void send(Object tuple, ReplicaSuffix suffix, int shard) throws JMSException {
+			if (envelopes != null) {
+				Envelope envelope = envelopes[shard];
+				envelope.add(tuple, suffix);
+				if (envelope.getCount() >= ddp.packSize)
+					sendEnvelope(shard);
+				return;
+			}
+			Message message;
+			if (tuple instanceof Payload) {
+				Payload payload = (Payload)tuple;
+				BytesMessage bytesMessage = session.createBytesMessage();
+				bytesMessage.writeBytes(payload.getArray(), payload.getOffset(), payload.getLength());
+				if (suffix != null)
+					bytesMessage.writeBytes(suffix.getBytes());
+				message = bytesMessage;
+			} else if (suffix != null)
+				message = session.createTextMessage(((String)tuple).concat(suffix.getText()));
+			else
+				message = session.createTextMessage((String)tuple);
+			send(message, shard);
+		}
+		
+		/**
+		 * Send the tuples packed for the given shard as one BytesMessage.
+		 * 
+		 * @param shard
+		 * @throws JMSException
+		 */
+		private void sendEnvelope(int shard) throws JMSException {
+			Envelope envelope = envelopes[shard];
+			int length = envelope.encode();
+			BytesMessage message = session.createBytesMessage();
+			message.writeBytes(envelope.getPayload(), 0, length);
+			envelope.reset();
+			send(message, shard);
+		}
+		
+		private void send(Message message, int shard) throws JMSException {
+			if (shardProperty)
+				message.setIntProperty(ddp.shardProperty, shard);
+			if (ddp.stampSendTime)
+				message.setLongProperty(SEND_TIME_PROPERTY, EpochClock.currentTimeMicros());
+			producers[shardProperty ? 0 : shard].send(message);
+			uncommitted = transacted;
+		}
+		
+		public void flush() throws JMSException {
+			if (envelopes != null)
+				for (int i = 0; i < envelopes.length; i++)
+					if (envelopes[i].getCount() > 0)
+						sendEnvelope(i);
+			if (uncommitted) {
+				session.commit();
+				uncommitted = false;
+			}
+		}
+		
+		public void close() throws JMSException {
+			flush();
+			session.close();
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package storm.twitter.datadriver;
+
+import java.nio.charset.Charset;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Routes each tuple to one of a number of shards by a key taken from the
+ * tuple: either a field of the line (e.g. the user ID) or the first group
+ * matched by a pattern (e.g. a hashtag). Tuples with the same key always go
+ * to the same shard; tuples without a key are routed by their whole 
+ * content. The shard is (h ^ (h &gt;&gt;&gt; 16)) &amp; 0x7fffffff modulo 
+ * the shard count, where h is String.hashCode() of the key, so consumers 
+ * can compute it too. The key of a pre-encoded Payload is located and 
+ * hashed in its bytes, giving the same hash without decoding the payload:
+ * only keys that are not ASCII are decoded, and patterns are matched on 
+ * the bytes of ASCII payloads.
+ */
+public class KeyPartitioner {
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private final int shards;
+	private final int keyField;
+	private final char separator;
+	private final Pattern keyPattern;
+	private final int salt;
+	
+	public KeyPartitioner(DataDriverParameters ddp) {
+		this(ddp, ddp.shards, 0);
+	}
+	
+	/**
+	 * @param ddp where to find the key
+	 * @param shards how many shards to partition the tuples into
+	 * @param salt mixed into the hash when not 0, so that partitioning by 
+	 * the same key into different shard counts, e.g. nodes and queues, 
+	 * gives independent partitions
+	 */
+	public KeyPartitioner(DataDriverParameters ddp, int shards, int salt) {
+		this.shards = Math.max(1, shards);
+		this.salt = salt;
+		this.keyField = ddp.keyField;
+		if (ddp.fieldSeparator.length() != 1)
+			throw new IllegalArgumentException("Field separator must be a single character: " + ddp.fieldSeparator);
+		this.separator = ddp.fieldSeparator.charAt(0);
+		this.keyPattern = ddp.keyPattern != null ? Pattern.compile(ddp.keyPattern) : null;
+	}
+	
+	public int getShards() {
+		return shards;
+	}
+	
+	/**
+	 * @param tuple a line (String) or its UTF-8 bytes (Payload)
+	 * @return the shard of the tuple, in [0, getShards())
+	 */
+	public int getShard(Object tuple) {
+		if (shards == 1)
+			return 0;
+		int h;
+		if (tuple instanceof Payload)
+			h = hashKey((Payload)tuple);
+		else {
+			String key = getKey((String)tuple);
+			h = (key != null ? key : (String)tuple).hashCode();
+		}
+		if (salt != 0) {
+			h = (h ^ salt) * 0x85ebca6b;
+			h ^= h >>> 13;
+		}
+		return ((h ^ (h >>> 16)) & 0x7fffffff) % shards;
+	}
+	
+	/**
+	 * @param payload
+	 * @return String.hashCode() of the key of the payload, of the whole 
+	 * payload if it has none
+	 */
+	private int hashKey(Payload payload) {
+		byte[] bytes = payload.getArray();
+		int start = payload.getOffset();
+		int end = start + payload.getLength();
+		if (keyPattern != null) {
+			if (!isAscii(bytes, start, end)) {
+				String line = payload.toString();
+				String key = getKey(line);
+				return (key != null ? key : line).hashCode();
+			}
+			Matcher matcher = keyPattern.matcher(new AsciiSequence(bytes, start, end));
+			if (matcher.find()) {
+				int group = matcher.groupCount() > 0 ? 1 : 0;
+				if (matcher.start(group) >= 0)
+					return hash(bytes, start + matcher.start(group), start + matcher.end(group));
+			}
+		} else if (keyField >= 0 && separator < 128) {
+			// UTF-8 never encodes other characters with ASCII bytes, so the separator can be searched byte by byte
+			int keyStart = start;
+			for (int i = 0; i < keyField && keyStart <= end; i++) {
+				while (keyStart < end && bytes[keyStart] != separator)
+					keyStart++;
+				keyStart++;
+			}
+			if (keyStart <= end) {
+				int keyEnd = keyStart;
+				while (keyEnd < end && bytes[keyEnd] != separator)
+					keyEnd++;
+				// as String.trim()
+				while (keyStart < keyEnd && (bytes[keyStart] & 0xff) <= ' ')
+					keyStart++;
+				while (keyEnd > keyStart && (bytes[keyEnd - 1] & 0xff) <= ' ')
+					keyEnd--;
+				return hash(bytes, keyStart, keyEnd);
+			}
+		} else if (keyField >= 0) {
+			String line = payload.toString();
+			String key = getKey(line);
+			return (key != null ? key : line).hashCode();
+		}
+		return hash(bytes, start, end);
+	}
+	
+	/**
+	 * @param bytes
+	 * @param start
+	 * @param end
+	 * @return String.hashCode() of the given UTF-8 bytes, decoded only if 
+	 * they are not ASCII
+	 */
+	private static int hash(byte[] bytes, int start, int end) {
+		int h = 0;
+		for (int i = start; i < end; i++) {
+			if (bytes[i] < 0)
+				return new String(bytes, start, end - start, UTF8).hashCode();
+			h = 31 * h + bytes[i];
+		}
+		return h;
+	}
+	
+	private static boolean isAscii(byte[] bytes, int start, int end) {
+		for (int i = start; i < end; i++)
+			if (bytes[i] < 0)
+				return false;
+		return true;
+	}
+	
+	/**
+	 * ASCII bytes seen as characters, for patterns to match them in place
+	 */
+	private static class AsciiSequence implements CharSequence {
+		
+		private final byte[] bytes;
+		private final int start;
+		private final int end;
+		
+		AsciiSequence(byte[] bytes, int start, int end) {
+			this.bytes = bytes;
+			this.start = start;
+			this.end = end;
+		}
+		
+		public int length() {
+			return end - start;
+		}
+		
+		public char charAt(int index) {
+			return (char)bytes[start + index];
+		}
+		
+		public CharSequence subSequence(int from, int to) {
+			return new AsciiSequence(bytes, start + from, start + to);
+		}
+		
+		public String toString() {
+			return new String(bytes, start, end - start, UTF8);
+		}
+	}
+	
+	/**
+	 * @param line
+	 * @return the key of the line, null if it has none
+	 */
+	public String getKey(String line) {
+		if (keyPattern != null) {
+			Matcher matcher = keyPattern.matcher(line);
+			if (!matcher.find())
+				return null;
+			return matcher.groupCount() > 0 ? matcher.group(1) : matcher.group();
+		}
+		if (keyField >= 0) {
+			int start = 0;
+			for (int i = 0; i < keyField; i++) {
+				start = line.indexOf(separator, start) + 1;
+				if (start == 0)
+					return null;
+			}
+			int end = line.indexOf(separator, start);
+			return line.substring(start, end < 0 ? line.length() : end).trim();
+		}
+		return null;
+	}
+}
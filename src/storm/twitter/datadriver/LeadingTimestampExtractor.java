@@ -0,0 +1,12 @@
+package storm.twitter.datadriver;
+
+/**
+ * The timestamp of tweet datasets: the number at the beginning of the line,
+ * up to the character preceding the first space.
+ */
+public class LeadingTimestampExtractor implements TimestampExtractor {
+	
+	public long getTimestamp(LineReader reader) throws Exception {
+		return reader.getTimestamp();
+	}
+}
@@ -0,0 +1,15 @@
+package storm.twitter.datadriver;
+
+/**
+ * Decodes each line as is, as a UTF-8 string.
+ */
+public class LineDecoder implements RecordDecoder<String> {
+	
+	public String decode(LineReader reader) throws Exception {
+		return reader.getLine();
+	}
+	
+	public String decode(LineReader reader, long timestamp) throws Exception {
+		return reader.getRebasedLine(timestamp);
+	}
+}
@@ -0,0 +1,212 @@
+package storm.twitter.datadriver;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.zip.GZIPInputStream;
+
+import net.jpountz.lz4.LZ4FrameInputStream;
+
+import com.github.luben.zstd.ZstdInputStream;
+
+/**
+ * Reads a dataset line by line. Timestamps and numeric fields are parsed 
+ * straight from the bytes of the current line, so no String is built unless
+ * the line itself is requested with getLine(). Offsets are absolute 
+ * positions in the (uncompressed) content of the dataset.
+ * Subclasses locate the lines and give access to their bytes: 
+ * MappedLineReader maps plain files, StreamLineReader reads compressed 
+ * ones.
+ */
+public abstract class LineReader {
+	
+	protected static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	/**
+	 * absolute offsets of the current line: [lineStart, lineEnd) excludes
+	 * the line terminator
+	 */
+	protected long lineStart, lineEnd;
+	
+	/**
+	 * absolute offsets of the last number parsed in the current line, e.g.
+	 * its timestamp, see getRebasedLineBytes()
+	 */
+	private long numberStart, numberEnd;
+	
+	/**
+	 * Open a dataset with the reader its extension calls for: .gz, .zst and 
+	 * .lz4 (frame format) files are decompressed on the fly, any other file
+	 * is memory-mapped.
+	 * 
+	 * @param filename
+	 * @param readAhead how many chunks of decompressed data a background 
+	 * thread keeps ready for compressed datasets, 0 to decompress in the 
+	 * reading thread
+	 * @return a reader positioned before the first line
+	 * @throws IOException
+	 */
+	public static LineReader open(String filename, int readAhead) throws IOException {
+		InputStream in;
+		if (filename.endsWith(".gz"))
+			in = new GZIPInputStream(new FileInputStream(filename), 1 << 16);
+		else if (filename.endsWith(".zst"))
+			in = new ZstdInputStream(new BufferedInputStream(new FileInputStream(filename), 1 << 16));
+		else if (filename.endsWith(".lz4"))
+			in = new LZ4FrameInputStream(new BufferedInputStream(new FileInputStream(filename), 1 << 16));
+		else
+			return new MappedLineReader(filename);
+		if (readAhead > 0)
+			in = new ReadAheadInputStream(in, readAhead);
+		return new StreamLineReader(in);
+	}
+	
+	/**
+	 * Move to the next line of the file.
+	 *
+	 * @return false if the end of the file has been reached
+	 * @throws IOException
+	 */
+	public abstract boolean nextLine() throws IOException;
+	
+	/**
+	 * @param position absolute offset, within the current line
+	 * @return the byte at the given offset
+	 */
+	protected abstract byte byteAt(long position);
+	
+	/**
+	 * Parse the timestamp at the beginning of the current line, that is the
+	 * characters before the one preceding the first space (the same rule as
+	 * TweetReader.getSecond(String)), ignoring surrounding whitespace.
+	 *
+	 * @return the timestamp of the current line (in ms)
+	 * @throws IOException if the line does not start with a number
+	 */
+	public long getTimestamp() throws IOException {
+		long space = lineStart;
+		while (space < lineEnd && byteAt(space) != ' ')
+			space++;
+		if (space == lineEnd)
+			throw new IOException("No timestamp in line at offset " + lineStart);
+		
+		return parseLong(lineStart, space - 1);
+	}
+	
+	/**
+	 * Parse a field of the current line as a long, ignoring surrounding 
+	 * whitespace.
+	 * 
+	 * @param field the index of the field, starting from 0
+	 * @param separator the byte separating the fields
+	 * @return the value of the field
+	 * @throws IOException if the line has fewer fields or the field is not a number
+	 */
+	public long getLong(int field, byte separator) throws IOException {
+		long start = lineStart;
+		for (int i = 0; i < field; i++) {
+			while (start < lineEnd && byteAt(start) != separator)
+				start++;
+			if (start == lineEnd)
+				throw new IOException("No field " + field + " in line at offset " + lineStart);
+			start++;
+		}
+		long end = start;
+		while (end < lineEnd && byteAt(end) != separator)
+			end++;
+		return parseLong(start, end);
+	}
+	
+	/**
+	 * @param p absolute offset of the first byte
+	 * @param end absolute offset after the last byte
+	 * @return the number between the given offsets, trimmed
+	 * @throws IOException if there is no number there
+	 */
+	protected long parseLong(long p, long end) throws IOException {
+		while (p < end && isWhitespace(byteAt(p)))
+			p++;
+		while (end > p && isWhitespace(byteAt(end - 1)))
+			end--;
+		
+		numberStart = p;
+		numberEnd = end;
+		boolean negative = false;
+		if (p < end && (byteAt(p) == '-' || byteAt(p) == '+')) {
+			negative = byteAt(p) == '-';
+			p++;
+		}
+		if (p == end)
+			throw new IOException("No number in line at offset " + lineStart);
+		
+		long value = 0;
+		for (; p < end; p++) {
+			int digit = byteAt(p) - '0';
+			if (digit < 0 || digit > 9)
+				throw new IOException("Bad number in line at offset " + lineStart);
+			value = value * 10 + digit;
+		}
+		return negative ? -value : value;
+	}
+	
+	private static boolean isWhitespace(byte b) {
+		return b <= ' ';
+	}
+	
+	/**
+	 * @return the current line, decoded as UTF-8
+	 */
+	public abstract String getLine();
+	
+	/**
+	 * @return a copy of the bytes of the current line, as encoded in the file
+	 */
+	public abstract byte[] getLineBytes();
+	
+	/**
+	 * @param value
+	 * @return a copy of the bytes of the current line, with the last number
+	 * parsed in it (its timestamp, once the timestamp is extracted) replaced
+	 * by the given value
+	 */
+	public byte[] getRebasedLineBytes(long value) {
+		byte[] line = getLineBytes();
+		byte[] number = Long.toString(value).getBytes(UTF8);
+		int start = (int)(numberStart - lineStart);
+		int end = (int)(numberEnd - lineStart);
+		byte[] rebased = new byte[line.length - (end - start) + number.length];
+		System.arraycopy(line, 0, rebased, 0, start);
+		System.arraycopy(number, 0, rebased, start, number.length);
+		System.arraycopy(line, end, rebased, start + number.length, line.length - end);
+		return rebased;
+	}
+	
+	/**
+	 * @param value
+	 * @return the current line, decoded as UTF-8, with the last number 
+	 * parsed in it replaced by the given value, see getRebasedLineBytes()
+	 */
+	public String getRebasedLine(long value) {
+		return new String(getRebasedLineBytes(value), UTF8);
+	}
+	
+	/**
+	 * Position the reader so that the next call to nextLine() returns the
+	 * line starting at the given offset.
+	 * 
+	 * @param position the offset (in bytes) of the beginning of a line
+	 * @throws IOException if the reader cannot move there
+	 */
+	public abstract void seek(long position) throws IOException;
+	
+	/**
+	 * @return the offset (in bytes) of the current line
+	 */
+	public long getLinePosition() {
+		return lineStart;
+	}
+	
+	public abstract void close() throws IOException;
+}
@@ -0,0 +1,139 @@
+package storm.twitter.datadriver;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a dataset line by line through a memory-mapped window of the file.
+ * Lines are located by scanning bytes for '\n' and timestamps are parsed 
+ * straight from the mapped bytes, see LineReader.
+ * Files larger than the window are mapped one window at a time, each new
+ * window starting at the beginning of the line that crossed the end of the
+ * previous one.
+ */
+public class MappedLineReader extends LineReader {
+	
+	/**
+	 * size of each mapped window, a single line must fit in it
+	 */
+	private static final long WINDOW_SIZE = 1L << 30;
+	
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final long fileSize;
+	
+	private MappedByteBuffer window;
+	private ByteBuffer view;
+	private long windowStart;
+	
+	/**
+	 * absolute offset of the next line to read
+	 */
+	private long nextPosition;
+	
+	private byte[] lineBytes = new byte[1024];
+	
+	public MappedLineReader(String filename) throws IOException {
+		file = new RandomAccessFile(filename, "r");
+		channel = file.getChannel();
+		fileSize = channel.size();
+		map(0);
+	}
+	
+	private void map(long position) throws IOException {
+		windowStart = position;
+		window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, fileSize - position));
+		view = window.duplicate();
+	}
+	
+	/**
+	 * Move to the next line of the file.
+	 *
+	 * @return false if the end of the file has been reached
+	 * @throws IOException
+	 */
+	public boolean nextLine() throws IOException {
+		if (nextPosition >= fileSize)
+			return false;
+		if (nextPosition >= windowStart + window.limit())
+			map(nextPosition);
+		
+		long position = nextPosition;
+		while (true) {
+			int p = (int)(position - windowStart);
+			int limit = window.limit();
+			while (p < limit && window.get(p) != '\n')
+				p++;
+			position = windowStart + p;
+			if (p < limit || position >= fileSize)
+				break;
+			// the line crosses the end of the window
+			if (nextPosition == windowStart)
+				throw new IOException("Line at offset " + nextPosition + " is longer than " + WINDOW_SIZE + " bytes");
+			map(nextPosition);
+		}
+		
+		lineStart = nextPosition;
+		lineEnd = position;
+		nextPosition = position + 1;
+		if (lineEnd > lineStart && byteAt(lineEnd - 1) == '\r')
+			lineEnd--;
+		return true;
+	}
+	
+	protected byte byteAt(long position) {
+		return window.get((int)(position - windowStart));
+	}
+	
+	/**
+	 * @return the current line, decoded as UTF-8
+	 */
+	public String getLine() {
+		int length = (int)(lineEnd - lineStart);
+		if (lineBytes.length < length)
+			lineBytes = new byte[Math.max(length, 2 * lineBytes.length)];
+		view.position((int)(lineStart - windowStart));
+		view.get(lineBytes, 0, length);
+		return new String(lineBytes, 0, length, UTF8);
+	}
+	
+	public byte[] getLineBytes() {
+		byte[] bytes = new byte[(int)(lineEnd - lineStart)];
+		view.position((int)(lineStart - windowStart));
+		view.get(bytes);
+		return bytes;
+	}
+	
+	/**
+	 * Position the reader so that the next call to nextLine() returns the
+	 * line starting at the given offset.
+	 * 
+	 * @param position the offset (in bytes) of the beginning of a line
+	 * @throws IOException
+	 */
+	public void seek(long position) throws IOException {
+		if (position < 0 || position > fileSize)
+			throw new IOException("Cannot seek to offset " + position + " in a file of " + fileSize + " bytes");
+		nextPosition = position;
+		if (position < windowStart || position >= windowStart + window.limit())
+			if (position < fileSize)
+				map(position);
+	}
+	
+	/**
+	 * @return the size (in bytes) of the file
+	 */
+	public long getFileSize() {
+		return fileSize;
+	}
+	
+	public void close() throws IOException {
+		window = null;
+		view = null;
+		channel.close();
+		file.close();
+	}
+}
@@ -0,0 +1,289 @@
+package storm.twitter.datadriver;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Coordinates the nodes of a distributed run over a simple line-based TCP
+ * protocol. Node 0 listens on the coordinator address, the other nodes 
+ * connect to it:
+ * <pre>
+ * node -&gt; coordinator: HELLO &lt;node index&gt;
+ * coordinator -&gt; node: START &lt;start epoch (ms)&gt;
+ * node -&gt; coordinator: SECOND &lt;second&gt; &lt;tuples&gt;   (after each second)
+ * node -&gt; coordinator: DONE &lt;tuples&gt;
+ * </pre>
+ * Once all the nodes said hello, the coordinator picks a start epoch a 
+ * little in the future so that every node starts its first second at the
+ * same wall-clock time, and then logs the tuples sent by all the nodes in 
+ * each second. Nodes of one machine can use a local address.
+ */
+public class NodeCoordinator {
+	
+	/**
+	 * how long (in ms) after the last hello the nodes start
+	 */
+	private static final long START_DELAY = 2000;
+	
+	/**
+	 * how long (in ms) a node waits before retrying to connect
+	 */
+	private static final long RETRY_INTERVAL = 500;
+	
+	/**
+	 * how long (in ms) the coordinator waits for the other nodes to 
+	 * complete once it completed
+	 */
+	private static final long FINISH_TIMEOUT = 60000;
+	
+	/**
+	 * how many seconds a second can wait for the reports of all the nodes,
+	 * after which it is logged with the reports received so far
+	 */
+	private static final int MAX_PENDING_SECONDS = 10;
+	
+	private final int nodeIndex;
+	private final int nodeCount;
+	private final InetSocketAddress address;
+	
+	/**
+	 * coordinator side: the connections of the other nodes
+	 */
+	private ServerSocket serverSocket;
+	private Socket[] nodes;
+	
+	/**
+	 * node side: the connection to the coordinator
+	 */
+	private Socket socket;
+	private PrintWriter out;
+	
+	/**
+	 * coordinator side: second -&gt; {tuples, reports} for the seconds not 
+	 * yet reported by all the nodes
+	 */
+	private final Map<Integer, long[]> seconds = new HashMap<Integer, long[]>();
+	private long aggregateTuples;
+	private int doneNodes;
+	private int lostNodes;
+	
+	private Logger logger = Logger.getLogger(NodeCoordinator.class);
+	
+	/**
+	 * @param ddp
+	 * @throws Exception if the coordinator address is not host:port
+	 */
+	public NodeCoordinator(DataDriverParameters ddp) throws Exception {
+		this.nodeIndex = ddp.nodeIndex;
+		this.nodeCount = ddp.nodeCount;
+		int colon = ddp.coordinatorAddress.lastIndexOf(':');
+		if (colon < 0)
+			throw new Exception("Coordinator address must be host:port: " + ddp.coordinatorAddress);
+		this.address = new InetSocketAddress(ddp.coordinatorAddress.substring(0, colon), Integer.parseInt(ddp.coordinatorAddress.substring(colon + 1)));
+	}
+	
+	public boolean isCoordinator() {
+		return nodeIndex == 0;
+	}
+	
+	/**
+	 * Wait for all the nodes and agree on the start time.
+	 * 
+	 * @return the start epoch (in ms)
+	 * @throws Exception
+	 */
+	public long awaitStart() throws Exception {
+		if (isCoordinator()) {
+			serverSocket = new ServerSocket();
+			serverSocket.setReuseAddress(true);
+			serverSocket.bind(address);
+			logger.info("Coordinator listening on " + address + ", waiting for " + (nodeCount - 1) + " node(s)");
+			nodes = new Socket[nodeCount];
+			for (int i = 1; i < nodeCount; i++) {
+				Socket node = serverSocket.accept();
+				String line = new BufferedReader(new InputStreamReader(node.getInputStream(), "UTF-8")).readLine();
+				if (line == null)
+					throw new IOException("Node at " + node.getRemoteSocketAddress() + " closed the connection before saying hello");
+				String[] hello = line.split(" ");
+				if (hello.length != 2 || !"HELLO".equals(hello[0]))
+					throw new Exception("Unexpected hello from " + node.getRemoteSocketAddress() + ": " + line);
+				int index = Integer.parseInt(hello[1]);
+				if (index <= 0 || index >= nodeCount || nodes[index] != null)
+					throw new Exception("Unexpected hello from " + node.getRemoteSocketAddress() + ": " + line);
+				nodes[index] = node;
+				logger.info("Node " + index + " connected from " + node.getRemoteSocketAddress());
+			}
+			long startEpoch = System.currentTimeMillis() + START_DELAY;
+			for (int i = 1; i < nodeCount; i++) {
+				PrintWriter writer = new PrintWriter(nodes[i].getOutputStream(), true);
+				writer.println("START " + startEpoch);
+				startListener(i);
+			}
+			return startEpoch;
+		}
+		
+		long lastLog = 0;
+		while (true) {
+			socket = new Socket();
+			try {
+				socket.connect(address);
+				break;
+			} catch (ConnectException e) {
+				socket.close();
+				if (System.currentTimeMillis() - lastLog >= 10000) {
+					logger.info("Waiting for the coordinator at " + address);
+					lastLog = System.currentTimeMillis();
+				}
+				Thread.sleep(RETRY_INTERVAL);
+			}
+		}
+		socket.setTcpNoDelay(true);
+		out = new PrintWriter(socket.getOutputStream(), true);
+		out.println("HELLO " + nodeIndex);
+		String line = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8")).readLine();
+		if (line == null)
+			throw new IOException("Coordinator at " + address + " closed the connection before starting node " + nodeIndex);
+		String[] start = line.split(" ");
+		if (start.length != 2 || !"START".equals(start[0]))
+			throw new Exception("Unexpected message from the coordinator to node " + nodeIndex + ": " + line);
+		return Long.parseLong(start[1]);
+	}
+	
+	/**
+	 * Start the thread that aggregates the reports of a node.
+	 * 
+	 * @param index
+	 */
+	private void startListener(final int index) {
+		Thread listener = new Thread("NodeListener-" + index) {
+			public void run() {
+				boolean completed = false;
+				try {
+					BufferedReader in = new BufferedReader(new InputStreamReader(nodes[index].getInputStream(), "UTF-8"));
+					String line;
+					while ((line = in.readLine()) != null) {
+						String[] fields = line.split(" ");
+						if ("SECOND".equals(fields[0]))
+							aggregate(Integer.parseInt(fields[1]), Integer.parseInt(fields[2]));
+						else if ("DONE".equals(fields[0])) {
+							done(index, Long.parseLong(fields[1]));
+							completed = true;
+							break;
+						}
+					}
+					if (!completed)
+						logger.error("Lost node " + index + ": connection closed before it completed");
+				} catch (IOException e) {
+					logger.error("Lost node " + index, e);
+				} catch (RuntimeException e) {
+					logger.error("Lost node " + index + ": malformed report", e);
+				} finally {
+					// a lost node counts as completed, so that finish() does not wait for it
+					if (!completed)
+						lost(index);
+				}
+			}
+		};
+		listener.setDaemon(true);
+		listener.start();
+	}
+	
+	private synchronized void aggregate(int second, int tuples) {
+		long[] aggregate = seconds.get(second);
+		if (aggregate == null) {
+			aggregate = new long[2];
+			seconds.put(second, aggregate);
+		}
+		aggregate[0] += tuples;
+		// lost nodes will not report
+		if (++aggregate[1] >= nodeCount - lostNodes) {
+			seconds.remove(second);
+			logger.info("[Second " + second + "] " + aggregate[0] + " tuples sent by " + aggregate[1] + " nodes");
+		}
+		// nor will the nodes lost while a second was pending
+		if (seconds.size() > MAX_PENDING_SECONDS) {
+			Iterator<Map.Entry<Integer, long[]>> pending = seconds.entrySet().iterator();
+			while (pending.hasNext()) {
+				Map.Entry<Integer, long[]> entry = pending.next();
+				if (entry.getKey() <= second - MAX_PENDING_SECONDS) {
+					pending.remove();
+					logger.warn("[Second " + entry.getKey() + "] " + entry.getValue()[0] + " tuples sent by " + entry.getValue()[1] + " of " + nodeCount + " nodes, the others did not report it");
+				}
+			}
+		}
+	}
+	
+	private synchronized void lost(int index) {
+		lostNodes++;
+		done(index, 0);
+		// the pending seconds reported by all the other nodes are complete
+		Iterator<Map.Entry<Integer, long[]>> pending = seconds.entrySet().iterator();
+		while (pending.hasNext()) {
+			Map.Entry<Integer, long[]> entry = pending.next();
+			if (entry.getValue()[1] >= nodeCount - lostNodes) {
+				pending.remove();
+				logger.info("[Second " + entry.getKey() + "] " + entry.getValue()[0] + " tuples sent by " + entry.getValue()[1] + " nodes");
+			}
+		}
+	}
+	
+	private synchronized void done(int index, long tuples) {
+		aggregateTuples += tuples;
+		doneNodes++;
+		logger.info("Node " + index + " completed: " + tuples + " tuples sent");
+		notifyAll();
+	}
+	
+	/**
+	 * Report the tuples sent by this node in a second.
+	 * 
+	 * @param second
+	 * @param tuples
+	 */
+	public void reportSecond(int second, int tuples) {
+		if (isCoordinator())
+			aggregate(second, tuples);
+		else
+			out.println("SECOND " + second + " " + tuples);
+	}
+	
+	/**
+	 * Report the end of this node and, on the coordinator, wait for the 
+	 * other nodes and log the aggregate throughput.
+	 * 
+	 * @param tuples sent by this node
+	 * @param seconds how long (in s) this node lasted
+	 * @throws Exception
+	 */
+	public void finish(long tuples, double seconds) throws Exception {
+		if (!isCoordinator()) {
+			out.println("DONE " + tuples);
+			socket.close();
+			return;
+		}
+		synchronized (this) {
+			done(0, tuples);
+			long deadline = System.currentTimeMillis() + FINISH_TIMEOUT;
+			long now;
+			while (doneNodes < nodeCount && (now = System.currentTimeMillis()) < deadline)
+				wait(deadline - now);
+			if (doneNodes < nodeCount)
+				logger.error("Gave up waiting for " + (nodeCount - doneNodes) + " node(s) after " + FINISH_TIMEOUT + " ms, aggregate throughput is partial");
+		}
+		logger.info(doneNodes + " of " + nodeCount + " nodes completed: " + aggregateTuples + " tuples sent, " + Math.round(aggregateTuples / seconds) + " tuples per second");
+		for (int i = 1; i < nodeCount; i++)
+			nodes[i].close();
+		serverSocket.close();
+	}
+}
@@ -0,0 +1,52 @@
+package storm.twitter.datadriver;
+
+/**
+ * Keeps the records of one node out of the node count, by the hash of 
+ * their key (see KeyPartitioner), so that the nodes of a distributed run 
+ * send disjoint slices of every second and all the records with the same 
+ * key are sent by the same node. Each second is read whole into the 
+ * given buffer and then filtered in place, so records that slice the 
+ * buffer of their batch (see OneSecondPayloads) stay valid.
+ * 
+ * @param <T> the type of the records
+ */
+public class NodeSliceSource<T> implements SecondSource<T> {
+	
+	private final SecondSource<T> source;
+	private final KeyPartitioner partitioner;
+	private final int nodeIndex;
+	
+	/**
+	 * @param source the whole dataset
+	 * @param partitioner partitions records into the node count
+	 * @param nodeIndex the slice to keep
+	 */
+	public NodeSliceSource(SecondSource<T> source, KeyPartitioner partitioner, int nodeIndex) {
+		this.source = source;
+		this.partitioner = partitioner;
+		this.nodeIndex = nodeIndex;
+	}
+	
+	public OneSecondBatch<T> newBatch() {
+		return source.newBatch();
+	}
+	
+	public <B extends OneSecondBatch<T>> B nextSecond(B batch) throws Exception {
+		source.nextSecond(batch);
+		int replicationFactor = batch.getReplicationFactor();
+		int kept = 0;
+		for (int i = 0; i < batch.getRecordCount(); i++)
+			if (partitioner.getShard(batch.getRecord(i * replicationFactor)) == nodeIndex)
+				batch.move(i, kept++);
+		batch.retain(kept);
+		return batch;
+	}
+	
+	public boolean isEof() {
+		return source.isEof();
+	}
+	
+	public void close() throws Exception {
+		source.close();
+	}
+}
@@ -0,0 +1,21 @@
+package storm.twitter.datadriver;
+
+/**
+ * Drops every tuple, so that a run measures the driver alone: reading, 
+ * pacing and the send loop, without any broker or I/O cost.
+ */
+public class NullSink implements TupleSink, TupleSender {
+	
+	public TupleSender createSender() {
+		return this;
+	}
+	
+	public void send(Object tuple, ReplicaSuffix suffix, int shard) {
+	}
+	
+	public void flush() {
+	}
+	
+	public void close() {
+	}
+}
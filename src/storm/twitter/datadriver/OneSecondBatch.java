@@ -0,0 +1,162 @@
+package storm.twitter.datadriver;
+
+import java.util.Arrays;
+
+/**
+ * The records of one second. Each distinct record is stored once together
+ * with the replication factor, the expansion to replicated messages happens
+ * when the send loop reads them through getRecord(). Buffers are reused from 
+ * one second to the next (see reset()), so that the steady state of the 
+ * driver does not allocate any array. A buffer doubles its capacity when a
+ * second holds more records than expected.
+ * 
+ * @param <T> the type of the records
+ */
+public class OneSecondBatch<T> {
+	
+	/**
+	 * the array of records
+	 */
+	private Object[] records;
+	
+	/**
+	 * the millisecond of each record within the second, as in the dataset
+	 */
+	private int[] millis;
+	
+	/**
+	 * the number of distinct records in this second.
+	 * The array is allocated before knowing the exact amount of records, so 
+	 * an estimated dimension is used. This is why this field is required and
+	 * records.length is not meaningful.
+	 */
+	private int recordCount;
+	
+	/**
+	 * how many times each record has to be sent
+	 */
+	private final int replicationFactor;
+	
+	/**
+	 * which second are we talking about?
+	 */
+	private int second;
+	
+	public OneSecondBatch(int capacity, int replicationFactor) {
+		this.records = new Object[capacity];
+		this.millis = new int[capacity];
+		this.replicationFactor = replicationFactor;
+	}
+	
+	/**
+	 * Empty this buffer so that it can be filled with the records of another 
+	 * second. References to the previous records are released.
+	 * 
+	 * @param second
+	 */
+	public void reset(int second) {
+		for (int i = 0; i < recordCount; i++)
+			records[i] = null;
+		this.recordCount = 0;
+		this.second = second;
+	}
+	
+	/**
+	 * @param record
+	 * @param millis the millisecond of the record within the second
+	 */
+	public void add(T record, int millis) {
+		if (recordCount == records.length) {
+			records = Arrays.copyOf(records, Math.max(16, 2 * records.length));
+			this.millis = Arrays.copyOf(this.millis, records.length);
+		}
+		this.millis[recordCount] = millis;
+		records[recordCount++] = record;
+	}
+	
+	/**
+	 * Move the distinct record from one index to a lower one, see retain().
+	 * 
+	 * @param from index in [0, getRecordCount())
+	 * @param to index in [0, from]
+	 */
+	public void move(int from, int to) {
+		records[to] = records[from];
+		millis[to] = millis[from];
+	}
+	
+	/**
+	 * Keep the first distinct records only, once the ones to keep have been
+	 * moved there.
+	 * 
+	 * @param count how many records to keep
+	 */
+	public void retain(int count) {
+		for (int i = count; i < recordCount; i++)
+			records[i] = null;
+		recordCount = Math.min(count, recordCount);
+	}
+	
+	/**
+	 * Set the capacity of this buffer, which must be empty (just reset).
+	 * 
+	 * @param capacity
+	 */
+	public void setCapacity(int capacity) {
+		if (capacity != records.length && capacity >= recordCount) {
+			records = new Object[capacity];
+			millis = new int[capacity];
+		}
+	}
+	
+	public int getCapacity() {
+		return records.length;
+	}
+	
+	public int getSecond() {
+		return second;
+	}
+	
+	/**
+	 * @param i index in [0, getSize())
+	 * @return the i-th record to send, replicas of a record being consecutive
+	 */
+	@SuppressWarnings("unchecked")
+	public T getRecord(int i) {
+		return (T)records[i / replicationFactor];
+	}
+	
+	/**
+	 * @param i index in [0, getSize())
+	 * @return which replica of its record the i-th record to send is, from 0
+	 */
+	public int getReplica(int i) {
+		return i % replicationFactor;
+	}
+	
+	/**
+	 * @param i index in [0, getSize())
+	 * @return the millisecond within the second of the i-th record to send
+	 */
+	public int getMillis(int i) {
+		return millis[i / replicationFactor];
+	}
+	
+	/**
+	 * @return the number of distinct records in this second
+	 */
+	public int getRecordCount() {
+		return recordCount;
+	}
+	
+	public int getReplicationFactor() {
+		return replicationFactor;
+	}
+	
+	/**
+	 * @return the number of records to send in this second, replicas included
+	 */
+	public int getSize() {
+		return recordCount * replicationFactor;
+	}
+}
@@ -0,0 +1,59 @@
+package storm.twitter.datadriver;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The pre-encoded records of one second, see OneSecondBatch. The bytes of 
+ * the second are read into a buffer owned by the batch, and each record is
+ * a Payload slicing it; both the buffer and the payloads are reused from 
+ * one second to the next, so the steady state allocates nothing.
+ */
+public class OneSecondPayloads extends OneSecondBatch<Payload> {
+	
+	private ByteBuffer arena = ByteBuffer.allocate(1 << 16);
+	private Payload[] payloads = new Payload[0];
+	
+	/**
+	 * payloads handed out since the last reset
+	 */
+	private int used;
+	
+	public OneSecondPayloads(int capacity, int replicationFactor) {
+		super(capacity, replicationFactor);
+	}
+	
+	public void reset(int second) {
+		super.reset(second);
+		used = 0;
+	}
+	
+	/**
+	 * @param length
+	 * @return the buffer of this batch, cleared and limited to the given 
+	 * length, to be filled with the bytes of the second
+	 */
+	public ByteBuffer getArena(int length) {
+		if (arena.capacity() < length)
+			arena = ByteBuffer.allocate(Math.max(length, 2 * arena.capacity()));
+		arena.clear();
+		arena.limit(length);
+		return arena;
+	}
+	
+	/**
+	 * @param offset
+	 * @param length
+	 * @return a payload slicing the buffer of this batch
+	 */
+	public Payload slice(int offset, int length) {
+		if (used == payloads.length) {
+			payloads = Arrays.copyOf(payloads, Math.max(16, 2 * payloads.length));
+			for (int i = used; i < payloads.length; i++)
+				payloads[i] = new Payload();
+		}
+		Payload payload = payloads[used++];
+		payload.set(arena.array(), offset, length);
+		return payload;
+	}
+}
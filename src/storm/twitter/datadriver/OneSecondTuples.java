@@ -1,40 +1,19 @@
 package storm.twitter.datadriver;
 
-public class OneSecondTuples {
+/**
+ * The tuples of one second, see OneSecondBatch.
+ */
+public class OneSecondTuples extends OneSecondBatch<String> {
 	
-	/**
-	 * the array of tuples (string)
-	 */
-	private final String[] tuples;
-	
-	/**
-	 * the number of tuples in this second.
-	 * The array is allocated before knowing the exact amount of tuples, so an 
-	 * upper bound dimension is used. This is why this field is required and
-	 * tuples.length is not meaningful.
-	 */
-	private final int size;
+	public OneSecondTuples(int capacity, int replicationFactor) {
+		super(capacity, replicationFactor);
+	}
 	
 	/**
-	 * which second are we talking about?
+	 * @param i index in [0, getSize())
+	 * @return the i-th tuple to send, replicas of a tuple being consecutive
 	 */
-	private final int second;
-	
-	public OneSecondTuples(int second, String[] tuples, int size) {
-		this.second = second;
-		this.tuples = tuples;
-		this.size = size;
-	}
-	
-	public int getSecond() {
-		return second;
-	}
-	
-	public String[] getTuples() {
-		return tuples;
-	}
-	
-	public int getSize() {
-		return size;
+	public String getTuple(int i) {
+		return getRecord(i);
 	}
 }
@@ -1,40 +1,26 @@
 package storm.twitter.datadriver;
 
-public class OneSecondTweets {
+/**
+ * The tweets of one second, see OneSecondBatch.
+ */
+public class OneSecondTweets extends OneSecondBatch<String> {
 	
-	/**
-	 * the array of tweets (string)
-	 */
-	private final String[] tweets;
+	public OneSecondTweets(int capacity, int replicationFactor) {
+		super(capacity, replicationFactor);
+	}
 	
 	/**
-	 * the number of tweets in this second.
-	 * The array is allocated before knowing the exact amount of tweets, so an 
-	 * upper bound dimension is used. This is why this field is required and
-	 * tweets.length is not meaningful.
+	 * @param i index in [0, getSize())
+	 * @return the i-th tweet to send, replicas of a tweet being consecutive
 	 */
-	private final int size;
+	public String getTweet(int i) {
+		return getRecord(i);
+	}
 	
 	/**
-	 * which second are we talking about?
+	 * @return the number of distinct tweets in this second
 	 */
-	private final int second;
-	
-	public OneSecondTweets(int second, String[] tuples, int size) {
-		this.second = second;
-		this.tweets = tuples;
-		this.size = size;
-	}
-	
-	public int getSecond() {
-		return second;
-	}
-	
-	public String[] getTweets() {
-		return tweets;
-	}
-	
-	public int getSize() {
-		return size;
+	public int getTweetCount() {
+		return getRecordCount();
 	}
 }
@@ -0,0 +1,65 @@
+package storm.twitter.datadriver;
+
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Waits until absolute deadlines expressed in System.nanoTime() units.
+ * The thread is parked with LockSupport.parkNanos() until spinThreshold
+ * before the deadline and then busy-spins for the last stretch, which
+ * gives sub-millisecond accuracy without burning a core for whole waits.
+ * Since deadlines are absolute, the error of a wait is not carried over
+ * to the following ones.
+ * If sleepTimeAccuracyCheck is enabled, the real wake-up time is compared
+ * with the deadline. In case the delay (in % of the requested wait) is 
+ * greater than sleepTimeAccuracyTolerance, then a warn message is logged.
+ * A Pacer has no state besides its configuration, so threads can share it.
+ */
+public class Pacer {
+	
+	public static final long NANOS_PER_SECOND = 1000000000L;
+	
+	private final long spinThreshold;
+	private final boolean accuracyCheck;
+	private final int accuracyTolerance;
+	
+	private Logger logger = Logger.getLogger(Pacer.class);
+	
+	public Pacer(DataDriverParameters ddp) {
+		this.spinThreshold = ddp.spinThreshold * 1000L;
+		this.accuracyCheck = ddp.sleepTimeAccuracyCheck;
+		this.accuracyTolerance = ddp.sleepTimeAccuracyTolerance;
+	}
+	
+	/**
+	 * Wait until the given deadline, return immediately if it has passed.
+	 * 
+	 * @param deadline in System.nanoTime() units
+	 * @return how late (in ns) the thread woke up with respect to the deadline
+	 */
+	public long waitUntil(long deadline) {
+		long start = System.nanoTime();
+		long remaining = deadline - start;
+		if (remaining <= 0)
+			return -remaining;
+		
+		while (remaining > spinThreshold) {
+			LockSupport.parkNanos(remaining - spinThreshold);
+			remaining = deadline - System.nanoTime();
+		}
+		long now = System.nanoTime();
+		while (now - deadline < 0)
+			now = System.nanoTime();
+		
+		long delay = now - deadline;
+		if (accuracyCheck) {
+			long expected = deadline - start;
+			if (100 * delay / expected > accuracyTolerance)
+				logger.warn(
+					"Bad sleep time accuracy (" + accuracyTolerance + "%, spin threshold " + spinThreshold / 1000 + " us): " +
+					"expected " + expected / 1000 + " us, real " + (now - start) / 1000 + " us");
+		}
+		return delay;
+	}
+}
@@ -0,0 +1,25 @@
+package storm.twitter.datadriver;
+
+/**
+ * Decides when each tuple of a second is due, as an offset from the 
+ * beginning of the second. A producer asks for the offsets of its tuples in
+ * sending order, so implementations may keep state between the calls of a
+ * second; each producer thread owns its own instance.
+ */
+public interface PacingStrategy {
+	
+	/**
+	 * Prepare to spread size tuples of the given second.
+	 * 
+	 * @param batch the second being sent
+	 * @param size how many of its tuples this producer is going to send
+	 */
+	public void startSecond(OneSecondBatch<?> batch, int size);
+	
+	/**
+	 * @param batch the second being sent
+	 * @param index the index in the second of the next tuple to send
+	 * @return when such tuple is due (in ns from the beginning of the second)
+	 */
+	public long nextOffset(OneSecondBatch<?> batch, int index);
+}
@@ -0,0 +1,52 @@
+package storm.twitter.datadriver;
+
+import java.nio.charset.Charset;
+
+/**
+ * A pre-encoded record: a slice of a buffer shared by all the records of a
+ * second (see OneSecondPayloads), so that reading a second does not 
+ * allocate per record. A payload is valid until its second is released: 
+ * sinks that keep records beyond send() must copy them, see toByteArray().
+ */
+public class Payload {
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private byte[] array;
+	private int offset;
+	private int length;
+	
+	void set(byte[] array, int offset, int length) {
+		this.array = array;
+		this.offset = offset;
+		this.length = length;
+	}
+	
+	public byte[] getArray() {
+		return array;
+	}
+	
+	public int getOffset() {
+		return offset;
+	}
+	
+	public int getLength() {
+		return length;
+	}
+	
+	/**
+	 * @return a copy of the bytes of this payload
+	 */
+	public byte[] toByteArray() {
+		byte[] bytes = new byte[length];
+		System.arraycopy(array, offset, bytes, 0, length);
+		return bytes;
+	}
+	
+	/**
+	 * @return this payload decoded as UTF-8
+	 */
+	public String toString() {
+		return new String(array, offset, length, UTF8);
+	}
+}
@@ -0,0 +1,30 @@
+package storm.twitter.datadriver;
+
+import java.util.Random;
+
+/**
+ * Spreads the tuples of a second as the arrivals of a Poisson process with
+ * exactly n arrivals in the second, that is as n sorted uniform times.
+ * Sorted uniform times are generated one after the other without storing
+ * them: given the previous time t, the next one is 
+ * 1 - (1 - t) * V^(1/k), where V is uniform in [0,1) and k is the number of
+ * arrivals still to generate.
+ */
+public class PoissonPacing implements PacingStrategy {
+	
+	private final Random random = new Random();
+	
+	private int remaining;
+	private double time;
+	
+	public void startSecond(OneSecondBatch<?> batch, int size) {
+		this.remaining = size;
+		this.time = 0;
+	}
+	
+	public long nextOffset(OneSecondBatch<?> batch, int index) {
+		if (remaining > 0)
+			time = 1 - (1 - time) * Math.pow(random.nextDouble(), 1.0 / remaining--);
+		return (long)(time * Pacer.NANOS_PER_SECOND);
+	}
+}
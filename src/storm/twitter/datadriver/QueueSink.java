@@ -0,0 +1,63 @@
+package storm.twitter.datadriver;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Puts tuples in a bounded in-memory queue, to be consumed in the same JVM,
+ * e.g. by a spout of a Storm LocalCluster, with no broker in between. 
+ * Queues are registered by name, so that the consumer can look them up with
+ * getQueue(). Text tuples are queued as Strings, pre-encoded ones as 
+ * byte[]. A full queue blocks the senders, which then shows in the send
+ * latency.
+ */
+public class QueueSink implements TupleSink, TupleSender {
+	
+	private static final ConcurrentMap<String, BlockingQueue<Object>> queues = new ConcurrentHashMap<String, BlockingQueue<Object>>();
+	
+	private final BlockingQueue<Object> queue;
+	
+	/**
+	 * @param name the name of the queue
+	 * @param capacity the capacity of the queue, if it does not exist yet
+	 */
+	public QueueSink(String name, int capacity) {
+		this.queue = getQueue(name, capacity);
+	}
+	
+	/**
+	 * @param name
+	 * @param capacity the capacity of the queue, if it does not exist yet
+	 * @return the queue registered with the given name, created if needed
+	 */
+	public static BlockingQueue<Object> getQueue(String name, int capacity) {
+		BlockingQueue<Object> queue = queues.get(name);
+		if (queue == null) {
+			queues.putIfAbsent(name, new ArrayBlockingQueue<Object>(capacity));
+			queue = queues.get(name);
+		}
+		return queue;
+	}
+	
+	public TupleSender createSender() {
+		return this;
+	}
+	
+	public void send(Object tuple, ReplicaSuffix suffix, int shard) throws Exception {
+		if (suffix != null)
+			queue.put(suffix.append(tuple));
+		else if (tuple instanceof Payload)
+			// payloads are reused once their second is sent
+			queue.put(((Payload)tuple).toByteArray());
+		else
+			queue.put(tuple);
+	}
+	
+	public void flush() {
+	}
+	
+	public void close() {
+	}
+}
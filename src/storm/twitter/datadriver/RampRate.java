@@ -0,0 +1,28 @@
+package storm.twitter.datadriver;
+
+/**
+ * A rate growing (or decreasing) linearly from one rate to another over the
+ * given seconds, and then staying at the latter.
+ */
+public class RampRate implements RateProfile {
+	
+	private final double from;
+	private final double to;
+	private final int seconds;
+	
+	public RampRate(double from, double to, int seconds) {
+		this.from = from;
+		this.to = to;
+		this.seconds = Math.max(1, seconds);
+	}
+	
+	public double getRate(int second) {
+		if (second >= seconds)
+			return to;
+		return from + (to - from) * second / seconds;
+	}
+	
+	public int getSeconds() {
+		return 0;
+	}
+}
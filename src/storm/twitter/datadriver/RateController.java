@@ -0,0 +1,122 @@
+package storm.twitter.datadriver;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Closes the loop between the schedule of the seconds and what the 
+ * producers actually achieve. 
+ * When a second starts late because the previous ones overran, its tuples
+ * are spread over a shorter window ending at the scheduled end of the 
+ * second, so that the lag is recovered smoothly instead of with a burst; a
+ * window is never shorter than (1 - maxCatchUp) of a second.
+ * The mean latency of producer.send() measured in a second raises the 
+ * minimum gap of the following second, since waiting for less than a send
+ * takes only costs a wake-up: with slow sends, tuples are sent in larger 
+ * batches.
+ * Seconds ending after their scheduled end are reported as seconds that 
+ * could not catch up.
+ */
+public class RateController {
+	
+	private final long secondLength;
+	private final long minWindow;
+	private final long configuredMinGap;
+	
+	private volatile long minGap;
+	
+	private long windowStart;
+	private long window;
+	
+	private int lateSeconds;
+	private long maxLag;
+	
+	private Logger logger = Logger.getLogger(RateController.class);
+	
+	/**
+	 * @param ddp
+	 * @param secondLength how long (in ns) a second of dataset lasts in wall-clock time
+	 */
+	public RateController(DataDriverParameters ddp, long secondLength) {
+		this.secondLength = secondLength;
+		this.minWindow = secondLength * (100 - Math.max(0, Math.min(100, ddp.maxCatchUp))) / 100;
+		this.configuredMinGap = ddp.minGap * 1000L;
+		this.minGap = configuredMinGap;
+	}
+	
+	/**
+	 * Decide the window over which the tuples of a second are spread.
+	 * 
+	 * @param scheduledStart when the second should start (System.nanoTime() units)
+	 * @param now when the second actually starts
+	 */
+	public void startSecond(long scheduledStart, long now) {
+		long lag = now - scheduledStart;
+		if (lag <= 0) {
+			windowStart = scheduledStart;
+			window = secondLength;
+		} else {
+			windowStart = now;
+			window = Math.max(secondLength - lag, minWindow);
+		}
+	}
+	
+	/**
+	 * @return the beginning of the window of the current second
+	 */
+	public long getWindowStart() {
+		return windowStart;
+	}
+	
+	/**
+	 * @return the length (in ns) of the window of the current second
+	 */
+	public long getWindow() {
+		return window;
+	}
+	
+	/**
+	 * @return the minimum gap (in ns) between two waits of the producers
+	 */
+	public long getMinGap() {
+		return minGap;
+	}
+	
+	/**
+	 * Account for a second whose tuples have all been sent.
+	 * 
+	 * @param second the second of dataset
+	 * @param tuples the tuples sent
+	 * @param sendTime the time (in ns) spent in producer.send(), summed over the producers
+	 * @param producers how many producers sent the tuples
+	 * @param now the end of the second
+	 * @param scheduledEnd when the second should have ended
+	 */
+	public void endSecond(int second, int tuples, long sendTime, int producers, long now, long scheduledEnd) {
+		long meanLatency = tuples > 0 ? sendTime / tuples : 0;
+		minGap = Math.max(configuredMinGap, 2 * meanLatency);
+		
+		long lag = now - scheduledEnd;
+		if (lag > 0) {
+			lateSeconds++;
+			maxLag = Math.max(maxLag, lag);
+			// each producer sends its share sequentially, so that is the achievable rate
+			long achievableRate = meanLatency > 0 ? producers * Pacer.NANOS_PER_SECOND / meanLatency : 0;
+			logger.warn("[Second " + second + "] could not catch up: " + lag / 1000000 + " ms behind schedule, " +
+				"mean send latency " + meanLatency / 1000 + " us, " + tuples + " tuples sent, achievable rate about " + achievableRate + " tuples/s");
+		}
+	}
+	
+	/**
+	 * @return how many seconds ended after their scheduled end
+	 */
+	public int getLateSeconds() {
+		return lateSeconds;
+	}
+	
+	/**
+	 * @return the maximum lag (in ns) at the end of a second
+	 */
+	public long getMaxLag() {
+		return maxLag;
+	}
+}
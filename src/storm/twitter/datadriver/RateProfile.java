@@ -0,0 +1,20 @@
+package storm.twitter.datadriver;
+
+/**
+ * The rate, in tuples per second, that GeneratorSource produces at each 
+ * second of a synthetic run.
+ */
+public interface RateProfile {
+	
+	/**
+	 * @param second from the beginning of the profile
+	 * @return the rate (tuples/s) at the given second, fractional rates are
+	 * carried over from one second to the next
+	 */
+	public double getRate(int second);
+	
+	/**
+	 * @return how many seconds the profile lasts, 0 if it goes on forever
+	 */
+	public int getSeconds();
+}
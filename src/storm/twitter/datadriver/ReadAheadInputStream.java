@@ -0,0 +1,173 @@
+package storm.twitter.datadriver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Reads an input stream from a background thread, keeping up to a given 
+ * number of chunks ready, so that decompressing a dataset runs on its own
+ * core ahead of the thread parsing lines. Chunks circulate between a free
+ * queue and a ready queue as the buffers of SecondPrefetcher do, so 
+ * reading does not allocate once started.
+ */
+public class ReadAheadInputStream extends InputStream {
+	
+	private static final int CHUNK_SIZE = 1 << 20;
+	
+	private static class Chunk {
+		final byte[] data = new byte[CHUNK_SIZE];
+		int length;
+	}
+	
+	/**
+	 * marks the end of the stream in the ready queue
+	 */
+	private final Chunk endMarker = new Chunk();
+	
+	private final InputStream in;
+	private final BlockingQueue<Chunk> freeChunks;
+	private final BlockingQueue<Chunk> readyChunks;
+	private final Thread reader;
+	
+	/**
+	 * the chunk being consumed, and the position in it
+	 */
+	private Chunk current;
+	private int position;
+	
+	/**
+	 * the error that stopped the background thread, rethrown by read()
+	 */
+	private volatile IOException failure;
+	
+	private Logger logger = Logger.getLogger(ReadAheadInputStream.class);
+	
+	/**
+	 * @param in the stream to read ahead, e.g. a decompressing one
+	 * @param chunks how many chunks to read ahead
+	 */
+	public ReadAheadInputStream(InputStream in, int chunks) {
+		this.in = in;
+		chunks = Math.max(1, chunks);
+		// chunks ready or being filled, plus the one being consumed
+		freeChunks = new ArrayBlockingQueue<Chunk>(chunks + 1);
+		for (int i = 0; i < chunks + 1; i++)
+			freeChunks.add(new Chunk());
+		// room for all the chunks and the end marker, so that offering the latter never fails
+		readyChunks = new ArrayBlockingQueue<Chunk>(chunks + 2);
+		reader = new Thread("ReadAheadInputStream") {
+			public void run() {
+				readAhead();
+			}
+		};
+		reader.setDaemon(true);
+		reader.start();
+	}
+	
+	/**
+	 * Loops filling free chunks from the stream until it is over or this
+	 * stream is closed. Only this thread uses the stream, closing it when 
+	 * done, since decompressing streams cannot be closed while reading. 
+	 * Whatever stops it, the end marker is queued so that the consumer 
+	 * never waits for a chunk that will not come.
+	 */
+	private void readAhead() {
+		boolean completed = false;
+		try {
+			while (true) {
+				Chunk chunk = freeChunks.take();
+				int length = 0;
+				int read = 0;
+				while (length < CHUNK_SIZE && !reader.isInterrupted() && (read = in.read(chunk.data, length, CHUNK_SIZE - length)) >= 0)
+					length += read;
+				chunk.length = length;
+				if (length > 0)
+					readyChunks.put(chunk);
+				if (read < 0)
+					break;
+			}
+			completed = true;
+		} catch (InterruptedException e) {
+			logger.debug("ReadAheadInputStream interrupted");
+			completed = true;
+		} catch (IOException e) {
+			logger.error("Error while reading ahead", e);
+			failure = e;
+		} finally {
+			// e.g. a RuntimeException of the decompressor, which the thread still reports
+			if (!completed && failure == null)
+				failure = new IOException("Reading ahead stopped unexpectedly");
+			readyChunks.offer(endMarker);
+			try {
+				in.close();
+			} catch (IOException e) {
+				logger.warn("Cannot close the stream read ahead", e);
+			}
+		}
+	}
+	
+	/**
+	 * @return the chunk to consume, null at the end of the stream
+	 * @throws IOException
+	 */
+	private Chunk currentChunk() throws IOException {
+		if (current != null && position < current.length)
+			return current;
+		if (current == endMarker)
+			return null;
+		if (current != null)
+			freeChunks.add(current);
+		try {
+			current = readyChunks.take();
+		} catch (InterruptedException e) {
+			throw new IOException("Interrupted while waiting for data", e);
+		}
+		position = 0;
+		if (current == endMarker) {
+			if (failure != null)
+				throw failure;
+			return null;
+		}
+		return current;
+	}
+	
+	public int read() throws IOException {
+		Chunk chunk = currentChunk();
+		if (chunk == null)
+			return -1;
+		return chunk.data[position++] & 0xff;
+	}
+	
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+		Chunk chunk = currentChunk();
+		if (chunk == null)
+			return -1;
+		int n = Math.min(len, chunk.length - position);
+		System.arraycopy(chunk.data, position, b, off, n);
+		position += n;
+		return n;
+	}
+	
+	public int available() {
+		return current != null && current != endMarker ? current.length - position : 0;
+	}
+	
+	/**
+	 * Stop the background thread and wait for it to close the stream.
+	 */
+	public void close() throws IOException {
+		reader.interrupt();
+		try {
+			reader.join();
+		} catch (InterruptedException e) {
+			// the background thread still closes the stream when it stops
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package storm.twitter.datadriver;
+
+/**
+ * Turns a dataset line into the record sent for it. Only the lines being
+ * replayed are decoded, skipped seconds are scanned through their 
+ * timestamps alone.
+ * 
+ * @param <T> the type of the records
+ */
+public interface RecordDecoder<T> {
+	
+	/**
+	 * @param reader positioned on the line
+	 * @return the record of the current line of the reader
+	 * @throws Exception if the line cannot be decoded
+	 */
+	public T decode(LineReader reader) throws Exception;
+	
+	/**
+	 * @param reader positioned on the line, whose timestamp has just been 
+	 * extracted
+	 * @param timestamp the timestamp to write in place of the one of the line
+	 * @return the record of the current line of the reader, rebased to the 
+	 * given timestamp
+	 * @throws Exception if the line cannot be decoded
+	 */
+	public T decode(LineReader reader, long timestamp) throws Exception;
+}
@@ -0,0 +1,120 @@
+package storm.twitter.datadriver;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.text.DecimalFormat;
+
+import org.apache.log4j.Logger;
+import org.apache.log4j.PropertyConfigurator;
+
+/**
+ * Binary replay format: the records of a dataset, already grouped into 
+ * seconds and encoded as UTF-8, so that replaying it involves neither 
+ * parsing timestamps nor encoding strings. Layout (big-endian):
+ * <pre>
+ * int magic, int version, long first second (epoch), int seconds, int unused
+ * seconds x (int record count, int block length, block)
+ * block: record count x (int payload length, short millisecond, payload)
+ * </pre>
+ * Every second has a block, empty seconds included, so the n-th block is
+ * the n-th second of the dataset. Late lines are stored in the second they
+ * are replayed in, with millisecond 0, as SecondReader does.
+ *
+ * Convert a dataset with: java storm.twitter.datadriver.ReplayFile &lt;dataset&gt; &lt;replay file&gt; [log4j.properties] [timestamp field] [field separator]
+ */
+public class ReplayFile {
+	
+	static final int MAGIC = 0x54445246; // "TDRF"
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 24;
+	static final int BLOCK_HEADER_SIZE = 8;
+	static final int RECORD_HEADER_SIZE = 6;
+	
+	/**
+	 * Convert a dataset, plain or compressed, to the binary replay format.
+	 * 
+	 * @param datasetFilename
+	 * @param replayFilename
+	 * @param timestampExtractor tells the second of each line of the dataset
+	 * @throws Exception
+	 */
+	public static void convert(String datasetFilename, String replayFilename, TimestampExtractor timestampExtractor) throws Exception {
+		Logger logger = Logger.getLogger(ReplayFile.class);
+		long start = System.currentTimeMillis();
+		DataDriverParameters ddp = new DataDriverParameters();
+		ddp.dataDriverfilename = datasetFilename;
+		ddp.useIndex = false;
+		SecondReader<byte[]> reader = new SecondReader<byte[]>(ddp, timestampExtractor, new BytesDecoder());
+		File tmpFile = new File(replayFilename + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 1 << 16));
+		
+		// header, the first second and the number of seconds are patched once known
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(0);
+		out.writeInt(0);
+		out.writeInt(0);
+		
+		OneSecondBatch<byte[]> batch = reader.newBatch();
+		int seconds = 0;
+		long records = 0;
+		long lastLog = start;
+		while (!reader.isEof()) {
+			reader.nextSecond(batch);
+			int length = 0;
+			for (int i = 0; i < batch.getRecordCount(); i++)
+				length += RECORD_HEADER_SIZE + batch.getRecord(i).length;
+			out.writeInt(batch.getRecordCount());
+			out.writeInt(length);
+			for (int i = 0; i < batch.getRecordCount(); i++) {
+				byte[] payload = batch.getRecord(i);
+				out.writeInt(payload.length);
+				out.writeShort(batch.getMillis(i));
+				out.write(payload);
+			}
+			seconds++;
+			records += batch.getRecordCount();
+			
+			long now = System.currentTimeMillis();
+			if (now - lastLog >= 1000) {
+				logger.info(records + " records converted so far, current second is " + batch.getSecond());
+				lastLog = now;
+			}
+		}
+		out.close();
+		reader.close();
+		
+		RandomAccessFile file = new RandomAccessFile(tmpFile, "rw");
+		file.seek(8);
+		file.writeLong(reader.getFirstSecond());
+		file.writeInt(seconds);
+		file.close();
+		
+		File replayFile = new File(replayFilename);
+		if (replayFile.exists() && !replayFile.delete())
+			throw new Exception("Cannot replace " + replayFile);
+		if (!tmpFile.renameTo(replayFile))
+			throw new Exception("Cannot rename " + tmpFile + " to " + replayFile);
+		
+		double time = (double)(System.currentTimeMillis() - start) / 1000;
+		logger.info("Converted " + records + " records in " + seconds + " seconds of dataset, it took " + new DecimalFormat("#.###").format(time) + " seconds");
+	}
+	
+	/**
+	 * @param args dataset and replay filenames and, optionally, log4j 
+	 * configuration file, index of the timestamp field and field separator
+	 * (default: ,)
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.err.println("Usage: java " + ReplayFile.class.getName() + " <dataset> <replay file> [log4j.properties] [timestamp field] [field separator]");
+			System.exit(1);
+		}
+		PropertyConfigurator.configure(args.length > 2 ? args[2] : "log4j.properties");
+		TimestampExtractor timestampExtractor = args.length > 3 ? new FieldTimestampExtractor(Integer.parseInt(args[3]), args.length > 4 ? args[4].charAt(0) : ',') : new LeadingTimestampExtractor();
+		convert(args[0], args[1], timestampExtractor);
+	}
+}
@@ -0,0 +1,128 @@
+package storm.twitter.datadriver;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Reads a binary replay file (see ReplayFile) one block, i.e. one second, 
+ * at a time. Each block is read with a single channel read straight into
+ * the buffer of the batch, its header gives the exact size of the batch 
+ * and records are Payloads slicing the block, so reading a second 
+ * allocates nothing and costs the same whatever its content. Skipped seconds
+ * are jumped over through the block lengths.
+ */
+public class ReplayFileReader implements SecondSource<Payload> {
+	
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	
+	private final int initialCapacity;
+	private final int replicationFactor;
+	
+	/**
+	 * seconds in the file, and the next one to read
+	 */
+	private final int seconds;
+	private int nextSecond;
+	
+	/**
+	 * the second after the last one to replay
+	 */
+	private final int endSecond;
+	
+	/**
+	 * seconds read so far, the numbering of the batches
+	 */
+	private int lastSecond;
+	
+	private final ByteBuffer blockHeader = ByteBuffer.allocate(ReplayFile.BLOCK_HEADER_SIZE);
+	
+	private Logger logger = Logger.getLogger(ReplayFileReader.class);
+	
+	public ReplayFileReader(DataDriverParameters ddp) throws Exception {
+		file = new RandomAccessFile(ddp.dataDriverfilename, "r");
+		channel = file.getChannel();
+		initialCapacity = ddp.maxTweetPerSecond;
+		replicationFactor = ddp.tweetReplicationFactor;
+		
+		ByteBuffer header = ByteBuffer.allocate(ReplayFile.HEADER_SIZE);
+		readFully(header);
+		if (header.getInt(0) != ReplayFile.MAGIC || header.getInt(4) != ReplayFile.VERSION)
+			throw new Exception(ddp.dataDriverfilename + " is not a replay file");
+		seconds = header.getInt(16);
+		logger.info("ReplayFileReader created (seconds: " + seconds + ", first second: " + header.getLong(8) + ", replication factor: " + replicationFactor + ", seconds to skip: " + ddp.secondsToSkip + ")");
+		
+		if (ddp.secondsToSkip > 0) {
+			if (ddp.secondsToSkip >= seconds)
+				throw new Exception("Trying to skip " + ddp.secondsToSkip + ", but dataset lasts " + seconds + " seconds");
+			long position = ReplayFile.HEADER_SIZE;
+			for (int i = 0; i < ddp.secondsToSkip; i++) {
+				blockHeader.clear();
+				readFully(blockHeader, position);
+				position += ReplayFile.BLOCK_HEADER_SIZE + blockHeader.getInt(4);
+			}
+			channel.position(position);
+			nextSecond = ddp.secondsToSkip;
+			logger.info("Skipped first " + ddp.secondsToSkip + " seconds");
+		}
+		endSecond = ddp.secondsToReplay > 0 ? Math.min(seconds, nextSecond + ddp.secondsToReplay) : seconds;
+	}
+	
+	private void readFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining())
+			if (channel.read(buffer) < 0)
+				throw new IOException("Replay file is truncated");
+	}
+	
+	private void readFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position);
+			if (read < 0)
+				throw new IOException("Replay file is truncated");
+			position += read;
+		}
+	}
+	
+	public OneSecondBatch<Payload> newBatch() {
+		return new OneSecondPayloads(initialCapacity, replicationFactor);
+	}
+	
+	/**
+	 * @param batch a buffer obtained from newBatch()
+	 */
+	public <B extends OneSecondBatch<Payload>> B nextSecond(B batch) throws Exception {
+		OneSecondPayloads payloads = (OneSecondPayloads)batch;
+		payloads.reset(lastSecond++);
+		blockHeader.clear();
+		readFully(blockHeader);
+		int count = blockHeader.getInt(0);
+		int length = blockHeader.getInt(4);
+		ByteBuffer block = payloads.getArena(length);
+		readFully(block);
+		block.flip();
+		
+		if (payloads.getCapacity() < count || payloads.getCapacity() > 2 * Math.max(count, initialCapacity))
+			payloads.setCapacity(Math.max(count, initialCapacity));
+		for (int i = 0; i < count; i++) {
+			int payloadLength = block.getInt();
+			int millis = block.getShort();
+			payloads.add(payloads.slice(block.position(), payloadLength), millis);
+			block.position(block.position() + payloadLength);
+		}
+		nextSecond++;
+		return batch;
+	}
+	
+	public boolean isEof() {
+		return nextSecond >= endSecond;
+	}
+	
+	public void close() throws Exception {
+		channel.close();
+		file.close();
+	}
+}
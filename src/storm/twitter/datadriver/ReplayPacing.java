@@ -0,0 +1,18 @@
+package storm.twitter.datadriver;
+
+/**
+ * Sends each tuple at the millisecond it has in the dataset, so that the
+ * bursts within a second are replayed as they were recorded. Replicas of a 
+ * tweet are due at the same time as the original.
+ */
+public class ReplayPacing implements PacingStrategy {
+	
+	private static final long NANOS_PER_MILLI = 1000000L;
+	
+	public void startSecond(OneSecondBatch<?> batch, int size) {
+	}
+	
+	public long nextOffset(OneSecondBatch<?> batch, int index) {
+		return batch.getMillis(index) * NANOS_PER_MILLI;
+	}
+}
@@ -0,0 +1,61 @@
+package storm.twitter.datadriver;
+
+import java.nio.charset.Charset;
+
+/**
+ * The suffix that tells a replica of a tuple from the others when tuples
+ * are replicated (see OneSecondBatch): the separator followed by the index
+ * of the replica, e.g. "#3". The suffixes of all replicas are built once, 
+ * as text and as UTF-8 bytes, and sinks append them while encoding the 
+ * tuple, so that giving each replica its own identity does not parse or 
+ * copy the tuple once more per replica. The first replica is sent as it is.
+ */
+public class ReplicaSuffix {
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private final String text;
+	private final byte[] bytes;
+	
+	private ReplicaSuffix(String text) {
+		this.text = text;
+		this.bytes = text.getBytes(UTF8);
+	}
+	
+	/**
+	 * @param separator
+	 * @param replicationFactor
+	 * @return the suffix of each replica, null for the first one
+	 */
+	public static ReplicaSuffix[] create(String separator, int replicationFactor) {
+		ReplicaSuffix[] suffixes = new ReplicaSuffix[replicationFactor];
+		for (int i = 1; i < replicationFactor; i++)
+			suffixes[i] = new ReplicaSuffix(separator + i);
+		return suffixes;
+	}
+	
+	public String getText() {
+		return text;
+	}
+	
+	public byte[] getBytes() {
+		return bytes;
+	}
+	
+	/**
+	 * For sinks that pass tuples on as objects rather than encoding them.
+	 * 
+	 * @param tuple a String or a Payload
+	 * @return a copy of the tuple followed by this suffix, a String or a byte[]
+	 */
+	public Object append(Object tuple) {
+		if (tuple instanceof Payload) {
+			Payload payload = (Payload)tuple;
+			byte[] replica = new byte[payload.getLength() + bytes.length];
+			System.arraycopy(payload.getArray(), payload.getOffset(), replica, 0, payload.getLength());
+			System.arraycopy(bytes, 0, replica, payload.getLength(), bytes.length);
+			return replica;
+		}
+		return ((String)tuple).concat(text);
+	}
+}
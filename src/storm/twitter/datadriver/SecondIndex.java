@@ -0,0 +1,246 @@
+package storm.twitter.datadriver;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.DecimalFormat;
+
+import org.apache.log4j.Logger;
+import org.apache.log4j.PropertyConfigurator;
+
+/**
+ * Sidecar index of a dataset, stored next to it as &lt;dataset&gt;.idx,
+ * mapping each second (relative to the first one) to the offset of its
+ * first line in the dataset and to the number of lines in that second.
+ * A second with no lines points to the first line of the next non-empty
+ * one, so seeking to any second and reading from there gives the same
+ * lines a sequential scan would.
+ *
+ * The index file is memory-mapped, so loading it costs nothing whatever the
+ * length of the dataset. Layout (big-endian):
+ * <pre>
+ * int magic, int version, long dataset length, long first second (epoch), int seconds, int unused
+ * seconds x (long offset, int line count)
+ * </pre>
+ *
+ * Seconds are told by the same TimestampExtractor the dataset is replayed
+ * with, so the index of a tuple dataset with the timestamp in a field must 
+ * be built with that field.
+ *
+ * Build it with: java storm.twitter.datadriver.SecondIndex &lt;dataset&gt; [log4j.properties] [timestamp field] [field separator]
+ */
+public class SecondIndex {
+	
+	private static final int MAGIC = 0x54444958; // "TDIX"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 32;
+	private static final int ENTRY_SIZE = 12;
+	
+	/**
+	 * chunks of decompressed data read ahead when indexing compressed datasets
+	 */
+	private static final int READ_AHEAD = 8;
+	
+	private final MappedByteBuffer buffer;
+	private final long firstSecond;
+	private final int seconds;
+	
+	private SecondIndex(MappedByteBuffer buffer) {
+		this.buffer = buffer;
+		this.firstSecond = buffer.getLong(16);
+		this.seconds = buffer.getInt(24);
+	}
+	
+	public static String getIndexFilename(String datasetFilename) {
+		return datasetFilename + ".idx";
+	}
+	
+	/**
+	 * Load the index of the given dataset, if it exists and is up to date.
+	 *
+	 * @param datasetFilename
+	 * @return the index, or null if no valid index is available
+	 * @throws Exception
+	 */
+	public static SecondIndex load(String datasetFilename) throws Exception {
+		Logger logger = Logger.getLogger(SecondIndex.class);
+		File indexFile = new File(getIndexFilename(datasetFilename));
+		if (!indexFile.exists()) {
+			logger.info("No index found for " + datasetFilename);
+			return null;
+		}
+		
+		RandomAccessFile file = new RandomAccessFile(indexFile, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			if (channel.size() < HEADER_SIZE) {
+				logger.warn("Ignoring truncated index " + indexFile);
+				return null;
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+				logger.warn("Ignoring index " + indexFile + ": unknown format");
+				return null;
+			}
+			if (buffer.getLong(8) != new File(datasetFilename).length()) {
+				logger.warn("Ignoring index " + indexFile + ": dataset size changed since the index was built");
+				return null;
+			}
+			if (channel.size() < HEADER_SIZE + (long)buffer.getInt(24) * ENTRY_SIZE) {
+				logger.warn("Ignoring truncated index " + indexFile);
+				return null;
+			}
+			SecondIndex index = new SecondIndex(buffer);
+			logger.info("Index loaded from " + indexFile + " (" + index.seconds + " seconds)");
+			return index;
+		} finally {
+			file.close();
+		}
+	}
+	
+	/**
+	 * Scan a dataset whose lines start with their timestamp and write its 
+	 * index next to it.
+	 *
+	 * @param datasetFilename
+	 * @throws Exception
+	 */
+	public static void build(String datasetFilename) throws Exception {
+		build(datasetFilename, new LeadingTimestampExtractor());
+	}
+	
+	/**
+	 * Scan the dataset and write its index next to it. Offsets of 
+	 * compressed datasets are offsets in their uncompressed content, the
+	 * reader skips to them without parsing the lines in between.
+	 *
+	 * @param datasetFilename
+	 * @param timestampExtractor tells the second of each line
+	 * @throws Exception
+	 */
+	public static void build(String datasetFilename, TimestampExtractor timestampExtractor) throws Exception {
+		Logger logger = Logger.getLogger(SecondIndex.class);
+		long start = System.currentTimeMillis();
+		LineReader reader = LineReader.open(datasetFilename, READ_AHEAD);
+		File tmpFile = new File(getIndexFilename(datasetFilename) + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 1 << 16));
+		
+		// header, the number of seconds is patched once known
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(new File(datasetFilename).length());
+		
+		long firstSecond = 0;
+		int seconds = 0;
+		int count = 0;
+		long lines = 0;
+		long lastLog = start;
+		while (reader.nextLine()) {
+			long second = timestampExtractor.getTimestamp(reader) / 1000;
+			if (lines++ == 0) {
+				firstSecond = second;
+				out.writeLong(firstSecond);
+				out.writeInt(0);
+				out.writeInt(0);
+			}
+			/**
+			 *  Lines older than the current second are late lines and belong
+			 *  to it, as in SecondReader. A newer line closes the current
+			 *  second and any empty second in between.
+			 */
+			int relative = (int)(second - firstSecond);
+			if (relative >= seconds) {
+				if (seconds > 0)
+					out.writeInt(count);
+				while (seconds < relative) {
+					out.writeLong(reader.getLinePosition());
+					out.writeInt(0);
+					seconds++;
+				}
+				out.writeLong(reader.getLinePosition());
+				seconds++;
+				count = 0;
+			}
+			count++;
+			
+			long now = System.currentTimeMillis();
+			if (now - lastLog >= 1000) {
+				logger.info(lines + " lines indexed so far, current second is " + relative);
+				lastLog = now;
+			}
+		}
+		if (seconds > 0)
+			out.writeInt(count);
+		else {
+			out.writeLong(0);
+			out.writeInt(0);
+			out.writeInt(0);
+		}
+		out.close();
+		reader.close();
+		
+		RandomAccessFile file = new RandomAccessFile(tmpFile, "rw");
+		file.seek(24);
+		file.writeInt(seconds);
+		file.close();
+		
+		File indexFile = new File(getIndexFilename(datasetFilename));
+		if (indexFile.exists() && !indexFile.delete())
+			throw new Exception("Cannot replace " + indexFile);
+		if (!tmpFile.renameTo(indexFile))
+			throw new Exception("Cannot rename " + tmpFile + " to " + indexFile);
+		
+		double time = (double)(System.currentTimeMillis() - start) / 1000;
+		logger.info("Indexed " + lines + " lines in " + seconds + " seconds of dataset, it took " + new DecimalFormat("#.###").format(time) + " seconds");
+	}
+	
+	/**
+	 * @return the first second of the dataset (seconds since the epoch)
+	 */
+	public long getFirstSecond() {
+		return firstSecond;
+	}
+	
+	/**
+	 * @return how many seconds the dataset spans
+	 */
+	public int getSeconds() {
+		return seconds;
+	}
+	
+	/**
+	 * @param second relative to the first second
+	 * @return the offset (in bytes) of the first line of the given second
+	 */
+	public long getOffset(int second) {
+		return buffer.getLong(HEADER_SIZE + second * ENTRY_SIZE);
+	}
+	
+	/**
+	 * @param second relative to the first second
+	 * @return the number of lines in the given second
+	 */
+	public int getCount(int second) {
+		return buffer.getInt(HEADER_SIZE + second * ENTRY_SIZE + 8);
+	}
+	
+	/**
+	 * @param args dataset filename and, optionally, log4j configuration file,
+	 * index of the timestamp field and field separator (default: ,)
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("Usage: java " + SecondIndex.class.getName() + " <dataset> [log4j.properties] [timestamp field] [field separator]");
+			System.exit(1);
+		}
+		PropertyConfigurator.configure(args.length > 1 ? args[1] : "log4j.properties");
+		if (args.length > 2)
+			build(args[0], new FieldTimestampExtractor(Integer.parseInt(args[2]), args.length > 3 ? args[3].charAt(0) : ','));
+		else
+			build(args[0]);
+	}
+}
@@ -0,0 +1,116 @@
+package storm.twitter.datadriver;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.log4j.Logger;
+
+/**
+ * This thread reads the dataset ahead of the driver, keeping up to depth 
+ * seconds of records ready to be sent, so that a slow read only drains the
+ * queue instead of delaying the second being sent.
+ * Buffers circulate between a free queue and a ready queue: the thread
+ * takes a free buffer, fills it with the next second and puts it in the
+ * ready queue; the driver takes it, sends it and gives it back with 
+ * release(). Both queues provide the happens-before ordering between the
+ * thread filling a buffer and the thread sending it.
+ * 
+ * @param <T> the type of the records
+ */
+public class SecondPrefetcher<T> extends Thread {
+	
+	/**
+	 * marks the end of the dataset in the ready queue
+	 */
+	private final OneSecondBatch<T> endMarker = new OneSecondBatch<T>(0, 1);
+	
+	private final SecondSource<T> source;
+	private final BlockingQueue<OneSecondBatch<T>> freeBuffers;
+	private final BlockingQueue<OneSecondBatch<T>> readyBuffers;
+	private final DriverMetrics metrics;
+	
+	/**
+	 * the error that stopped this thread, rethrown to the driver by take()
+	 */
+	private volatile Throwable failure;
+	
+	private Logger logger = Logger.getLogger(SecondPrefetcher.class);
+	
+	/**
+	 * @param source
+	 * @param depth how many seconds to read ahead
+	 * @param metrics where to record the time spent reading each second
+	 */
+	public SecondPrefetcher(SecondSource<T> source, int depth, DriverMetrics metrics) {
+		super("SecondPrefetcher");
+		setDaemon(true);
+		this.source = source;
+		this.metrics = metrics;
+		depth = Math.max(1, depth);
+		// depth buffers ready or being loaded, plus the one being sent
+		freeBuffers = new ArrayBlockingQueue<OneSecondBatch<T>>(depth + 1);
+		for (int i = 0; i < depth + 1; i++)
+			freeBuffers.add(source.newBatch());
+		// room for all the buffers and the end marker, so that offering the latter never fails
+		readyBuffers = new ArrayBlockingQueue<OneSecondBatch<T>>(depth + 2);
+	}
+	
+	/**
+	 * Wait for the records of the next second.
+	 * 
+	 * @return the next second, or null if the dataset is over
+	 * @throws Exception if reading the dataset failed
+	 */
+	public OneSecondBatch<T> take() throws Exception {
+		OneSecondBatch<T> batch = readyBuffers.take();
+		if (batch == endMarker) {
+			readyBuffers.put(endMarker); // keep returning null
+			if (failure != null)
+				throw new Exception("Error while prefetching seconds", failure);
+			return null;
+		}
+		return batch;
+	}
+	
+	/**
+	 * Give back a buffer obtained from take() once all its records are sent.
+	 * 
+	 * @param batch
+	 */
+	@SuppressWarnings("unchecked")
+	public void release(OneSecondBatch<?> batch) {
+		freeBuffers.add((OneSecondBatch<T>)batch);
+	}
+	
+	/**
+	 * @return how many seconds are ready to be sent
+	 */
+	public int getReadySeconds() {
+		return readyBuffers.size();
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Thread#run()
+	 * 
+	 * Loops loading next second records until the dataset is over.
+	 * Blocks when no free buffer is available, that is when the ready queue
+	 * is full.
+	 */
+	public void run() {
+		try {
+			while (!source.isEof()) {
+				OneSecondBatch<T> batch = freeBuffers.take();
+				long start = System.nanoTime();
+				source.nextSecond(batch);
+				metrics.recordReadTime(System.nanoTime() - start);
+				readyBuffers.put(batch);
+			}
+		} catch (InterruptedException e) {
+			logger.info("SecondPrefetcher interrupted");
+		} catch (Throwable e) {
+			logger.error("Error while running SecondPrefetcher", e);
+			failure = e;
+		}
+		readyBuffers.offer(endMarker);
+	}
+}
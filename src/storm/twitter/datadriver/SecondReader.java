@@ -0,0 +1,320 @@
+package storm.twitter.datadriver;
+
+import java.text.DecimalFormat;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Reads a dataset one second at a time, whatever its records: a 
+ * TimestampExtractor tells the second of each line and a RecordDecoder turns
+ * the lines being replayed into records. Skipping (through the index when 
+ * available), the replay window, buffer sizing and replication are the same
+ * for every kind of dataset, see TweetReader and TupleReader.
+ * 
+ * In loop mode the reader goes back to the beginning of the replay window
+ * once it has read it, seeking rather than reopening plain datasets, and 
+ * goes on numbering seconds from there, so that the driver sees a single 
+ * endless stream. The timestamps of the records of the n-th loop are 
+ * shifted by n times the length of the window, so that they keep 
+ * increasing: the n-th loop replays the window as if it came next.
+ * 
+ * @param <T> the type of the records
+ */
+public class SecondReader<T> implements SecondSource<T> {
+	
+	private final int maxRecordPerSecond;
+	private final int replicationFactor;
+	
+	private final TimestampExtractor timestampExtractor;
+	private final RecordDecoder<T> recordDecoder;
+	
+	private LineReader reader;
+	
+	/**
+	 * Checking whether all the records in a second have been retrieved 
+	 * requires to read a record of the next second. Such record is still 
+	 * relevant and has to be stored somewhere to serve next nextSecond() 
+	 * method.
+	 */
+	private T bufferRecord;
+	
+	/**
+	 * the second of bufferRecord, parsed when it was read
+	 */
+	private int bufferSecond;
+	
+	/**
+	 * the millisecond of bufferRecord within its second
+	 */
+	private int bufferMillis;
+	
+	/**
+	 * Input dataset may contain no records in a certain second, we need to
+	 * account for this by returning empty batches for seconds when no
+	 * record is created
+	 */
+	private int lastSecond;
+	
+	private int firstSecond;
+	
+	/**
+	 * how many seconds to read before reaching eof, 0 to read the whole dataset
+	 */
+	private final int secondsToReplay;
+	
+	private boolean eof;
+	
+	/**
+	 * whether to loop over the replay window rather than reaching eof
+	 */
+	private final boolean loop;
+	private final String filename;
+	private final int readAhead;
+	
+	/**
+	 * the offset of the first line of the replay window
+	 */
+	private long windowStart;
+	
+	/**
+	 * the second the current loop started at, i.e. the number of seconds 
+	 * read in the previous loops, by which timestamps are shifted
+	 */
+	private int loopOffset;
+	private int loops;
+	
+	/**
+	 * the dataset index, if any, used to skip seconds and to size buffers
+	 */
+	private final SecondIndex index;
+	
+	/**
+	 * rolling estimate of the lines per second, used to size buffers when 
+	 * the index is not available
+	 */
+	private final CapacityEstimator capacityEstimator;
+	
+	private Logger logger;
+	
+	/**
+	 * @param ddp
+	 * @param timestampExtractor tells the second of each line
+	 * @param recordDecoder builds the record of each line to replay
+	 * @throws Exception
+	 */
+	public SecondReader(DataDriverParameters ddp, TimestampExtractor timestampExtractor, RecordDecoder<T> recordDecoder) throws Exception {
+		logger = Logger.getLogger(getClass());
+		this.maxRecordPerSecond = ddp.maxTweetPerSecond;
+		this.replicationFactor = ddp.tweetReplicationFactor;
+		this.timestampExtractor = timestampExtractor;
+		this.recordDecoder = recordDecoder;
+		loop = ddp.loop;
+		filename = ddp.dataDriverfilename;
+		readAhead = ddp.readAhead;
+		reader = LineReader.open(filename, readAhead);
+		logger.info(getClass().getSimpleName() + " created (initial records per second: " + maxRecordPerSecond + ", replication factor: " + replicationFactor + ", seconds to skip: " + ddp.secondsToSkip + ")");
+		secondsToReplay = ddp.secondsToReplay;
+		capacityEstimator = new CapacityEstimator(maxRecordPerSecond);
+		index = ddp.useIndex ? SecondIndex.load(ddp.dataDriverfilename) : null;
+		if (ddp.secondsToSkip > 0) {
+			if (index != null)
+				seekFirstSeconds(index, ddp.secondsToSkip);
+			else
+				skipFirstSeconds(ddp.secondsToSkip);
+		}
+	}
+	
+	/**
+	 * Skip the first seconds by seeking straight to the first line of the 
+	 * following second, as recorded by the dataset index.
+	 * 
+	 * @param index
+	 * @param howManySeconds
+	 * @throws Exception
+	 */
+	private void seekFirstSeconds(SecondIndex index, int howManySeconds) throws Exception {
+		if (howManySeconds >= index.getSeconds())
+			throw new Exception("Trying to skip " + howManySeconds + ", but dataset lasts " + index.getSeconds() + " seconds");
+		windowStart = index.getOffset(howManySeconds);
+		reader.seek(windowStart);
+		this.firstSecond = (int)index.getFirstSecond() + howManySeconds;
+		logger.info("Skipped first " + howManySeconds + " seconds through the index (first second becomes " + firstSecond + ")");
+	}
+	
+	private void skipFirstSeconds(int howManySeconds) throws Exception {
+		logger.info("Skipping first " + howManySeconds + " seconds...");
+		long start = System.currentTimeMillis();
+		if (!reader.nextLine())
+			throw new Exception("Trying to skip " + howManySeconds + ", but dataset is empty");
+		int first = getSecond(timestampExtractor.getTimestamp(reader));
+		long skippedLineCount = 1;
+		int last = first;
+		long lastLog = start;
+		while (last - first < howManySeconds) {
+			if (!reader.nextLine())
+				throw new Exception("Trying to skip " + howManySeconds + ", but dataset ended at line " + skippedLineCount);
+			long timestamp = timestampExtractor.getTimestamp(reader);
+			last = getSecond(timestamp);
+			bufferMillis = (int)(timestamp % 1000);
+			skippedLineCount++;
+			
+			long now = System.currentTimeMillis();
+			if (now-lastLog >= 1000) {
+				logger.debug("" + skippedLineCount + " lines skipped so far, current second is " + last);
+				lastLog = now;
+			}
+		}
+		skippedLineCount--;
+		windowStart = reader.getLinePosition();
+		bufferRecord = recordDecoder.decode(reader);
+		bufferSecond = last - first - howManySeconds;
+		logger.debug("" + skippedLineCount + " skipped lines, first second: " + first + ", last second: " + last);
+		logger.debug("Buffer record: " + bufferRecord);
+		double time = (double)(System.currentTimeMillis() - start) / 1000;
+		this.firstSecond += howManySeconds;
+		logger.info("Skipped " + skippedLineCount + " lines, it took " + new DecimalFormat("#.###").format(time) + " seconds (first second becomes " + firstSecond + ")");
+	}
+	
+	/**
+	 * @return a new buffer for the seconds of this reader, sized for the 
+	 * second to be read next
+	 */
+	public OneSecondBatch<T> newBatch() {
+		return new OneSecondBatch<T>(getExpectedCount(), replicationFactor);
+	}
+	
+	/**
+	 * Fill the given buffer with the records having the same 'second' of the 
+	 * next record in the file. Each record is stored once, the buffer 
+	 * carries the replication factor.
+	 * 
+	 * @param batch the buffer to reuse
+	 * @return the given buffer
+	 * @throws Exception
+	 */
+	public <B extends OneSecondBatch<T>> B nextSecond(B batch) throws Exception {
+		batch.reset(lastSecond);
+		int expected = getExpectedCount();
+		if (batch.getCapacity() < expected || capacityEstimator.isOversized(batch.getCapacity()))
+			batch.setCapacity(Math.max(expected, capacityEstimator.getCapacity()));
+		boolean doBreak = false;
+		
+		// manage a possible record read in the previous cycle
+		if (bufferRecord != null) {
+			if (bufferSecond <= lastSecond) {
+				batch.add(bufferRecord, bufferSecond == lastSecond ? bufferMillis : 0);
+				bufferRecord = null;
+			} else {
+				doBreak = true; // this record is more than one second ahead compared to the records read in the previous cycle
+				logger.info("Next record is at second " + bufferSecond + ", while this is second " + lastSecond);
+			}
+		}
+		
+		/**
+		 *  Lines up to the current second belong to this second (late 
+		 *  lines included), the first line of a later second is kept in 
+		 *  bufferRecord for the next cycles.
+		 */
+		while (!doBreak && reader.nextLine()) {
+			long timestamp = timestampExtractor.getTimestamp(reader);
+			int second = getSecond(timestamp) + loopOffset;
+			if (second <= lastSecond) {
+				// late records are due at the beginning of the second
+				batch.add(decode(timestamp), second == lastSecond ? (int)(timestamp % 1000) : 0);
+			} else {
+				bufferRecord = decode(timestamp);
+				bufferSecond = second;
+				bufferMillis = (int)(timestamp % 1000);
+				doBreak = true;
+			}
+		}
+		
+		if (!doBreak || (secondsToReplay > 0 && lastSecond - loopOffset >= secondsToReplay - 1)) {
+			if (loop)
+				rewind();
+			else
+				eof = true;
+		}
+		
+		capacityEstimator.update(batch.getRecordCount());
+		lastSecond++;
+		return batch;
+	}
+	
+	/**
+	 * @param timestamp the timestamp of the current line
+	 * @return the record of the current line, rebased to the current loop
+	 * @throws Exception
+	 */
+	private T decode(long timestamp) throws Exception {
+		if (loopOffset == 0)
+			return recordDecoder.decode(reader);
+		return recordDecoder.decode(reader, timestamp + 1000L * loopOffset);
+	}
+	
+	/**
+	 * Go back to the beginning of the replay window, the next loop starting
+	 * at the second after the last one read. Plain datasets are seeked, 
+	 * compressed ones cannot go back and are reopened, skipping to the 
+	 * window without parsing lines.
+	 * 
+	 * @throws Exception
+	 */
+	private void rewind() throws Exception {
+		// the record after the window, if any, is not replayed
+		bufferRecord = null;
+		loopOffset = lastSecond + 1;
+		loops++;
+		if (!(reader instanceof MappedLineReader)) {
+			reader.close();
+			reader = LineReader.open(filename, readAhead);
+		}
+		reader.seek(windowStart);
+		logger.info("Looping back to the beginning of the replay window (loop " + loops + ", timestamps shifted by " + loopOffset + " seconds)");
+	}
+	
+	/**
+	 * @return how many lines the second to be read next is expected to hold, 
+	 * exact if the index is available
+	 */
+	public int getExpectedCount() {
+		if (index != null) {
+			int second = (firstSecond == 0 ? 0 : firstSecond - (int)index.getFirstSecond()) + lastSecond - loopOffset;
+			if (second >= 0 && second < index.getSeconds())
+				return index.getCount(second);
+		}
+		return capacityEstimator.getCapacity();
+	}
+	
+	/**
+	 * @return the first second read (seconds since the epoch), known once 
+	 * the first line has been read
+	 */
+	public int getFirstSecond() {
+		return firstSecond;
+	}
+	
+	public int getReplicationFactor() {
+		return replicationFactor;
+	}
+	
+	public boolean isEof() {
+		return eof;
+	}
+	
+	/**
+	 * @param timestamp
+	 * @return the second of the given timestamp (in ms), relative to the first second
+	 */
+	public int getSecond(long timestamp) {
+		int second = (int)(timestamp / 1000);
+		if (firstSecond == 0)
+			firstSecond = second;
+		return second - firstSecond;
+	}
+	
+	public void close() throws Exception {
+		if (reader != null)
+			reader.close();
+	}
+}
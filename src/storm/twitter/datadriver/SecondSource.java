@@ -0,0 +1,32 @@
+package storm.twitter.datadriver;
+
+/**
+ * A source of the records to send, one second at a time, that 
+ * SecondPrefetcher reads ahead of the driver: the lines of a dataset 
+ * (SecondReader) or the blocks of a binary replay file (ReplayFileReader).
+ * 
+ * @param <T> the type of the records
+ */
+public interface SecondSource<T> {
+	
+	/**
+	 * @return a new buffer for the seconds of this source
+	 */
+	public OneSecondBatch<T> newBatch();
+	
+	/**
+	 * Fill the given buffer with the records of the next second.
+	 * 
+	 * @param batch the buffer to reuse
+	 * @return the given buffer
+	 * @throws Exception
+	 */
+	public <B extends OneSecondBatch<T>> B nextSecond(B batch) throws Exception;
+	
+	/**
+	 * @return true once the last second has been read
+	 */
+	public boolean isEof();
+	
+	public void close() throws Exception;
+}
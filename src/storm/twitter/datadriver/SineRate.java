@@ -0,0 +1,26 @@
+package storm.twitter.datadriver;
+
+/**
+ * A rate oscillating around a mean rate with the given amplitude and 
+ * period (in seconds), never below 0.
+ */
+public class SineRate implements RateProfile {
+	
+	private final double mean;
+	private final double amplitude;
+	private final int period;
+	
+	public SineRate(double mean, double amplitude, int period) {
+		this.mean = mean;
+		this.amplitude = amplitude;
+		this.period = Math.max(1, period);
+	}
+	
+	public double getRate(int second) {
+		return Math.max(0, mean + amplitude * Math.sin(2 * Math.PI * second / period));
+	}
+	
+	public int getSeconds() {
+		return 0;
+	}
+}
@@ -0,0 +1,27 @@
+package storm.twitter.datadriver;
+
+/**
+ * A base rate with a spike to a peak rate lasting the given seconds.
+ */
+public class SpikeRate implements RateProfile {
+	
+	private final double base;
+	private final double peak;
+	private final int at;
+	private final int duration;
+	
+	public SpikeRate(double base, double peak, int at, int duration) {
+		this.base = base;
+		this.peak = peak;
+		this.at = at;
+		this.duration = duration;
+	}
+	
+	public double getRate(int second) {
+		return second >= at && second < at + duration ? peak : base;
+	}
+	
+	public int getSeconds() {
+		return 0;
+	}
+}
@@ -0,0 +1,27 @@
+package storm.twitter.datadriver;
+
+/**
+ * A staircase: the rate starts from a given rate and grows by the given 
+ * increment every given seconds, so that each step lasts long enough to 
+ * tell whether the topology keeps up with it.
+ */
+public class StepRate implements RateProfile {
+	
+	private final double from;
+	private final double increment;
+	private final int every;
+	
+	public StepRate(double from, double increment, int every) {
+		this.from = from;
+		this.increment = increment;
+		this.every = Math.max(1, every);
+	}
+	
+	public double getRate(int second) {
+		return Math.max(0, from + increment * (second / every));
+	}
+	
+	public int getSeconds() {
+		return 0;
+	}
+}
@@ -0,0 +1,135 @@
+package storm.twitter.datadriver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads a dataset line by line from a stream, typically a decompressing 
+ * one. Bytes are read in large chunks into a buffer that holds the current
+ * line and the ones after it; the buffer doubles when a single line does
+ * not fit in it. Streams cannot go back, so seek() only moves forward, by 
+ * skipping the bytes in between without looking for lines.
+ */
+public class StreamLineReader extends LineReader {
+	
+	private static final int BUFFER_SIZE = 1 << 20;
+	
+	private final InputStream in;
+	
+	private byte[] buffer = new byte[BUFFER_SIZE];
+	
+	/**
+	 * absolute offset of buffer[0]
+	 */
+	private long bufferStart;
+	
+	/**
+	 * number of valid bytes in the buffer
+	 */
+	private int bufferLength;
+	
+	/**
+	 * absolute offset of the next line to read
+	 */
+	private long nextPosition;
+	
+	private boolean endOfStream;
+	
+	public StreamLineReader(InputStream in) {
+		this.in = in;
+	}
+	
+	/**
+	 * Move the bytes from nextPosition on to the beginning of the buffer 
+	 * and read more after them.
+	 * 
+	 * @return false if the stream is over
+	 * @throws IOException
+	 */
+	private boolean fill() throws IOException {
+		int keep = (int)(bufferStart + bufferLength - nextPosition);
+		if (keep == buffer.length)
+			buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+		else if (keep > 0)
+			System.arraycopy(buffer, bufferLength - keep, buffer, 0, keep);
+		bufferStart = nextPosition;
+		bufferLength = keep;
+		int read = in.read(buffer, bufferLength, buffer.length - bufferLength);
+		if (read < 0) {
+			endOfStream = true;
+			return false;
+		}
+		bufferLength += read;
+		return true;
+	}
+	
+	public boolean nextLine() throws IOException {
+		if (endOfStream && nextPosition >= bufferStart + bufferLength)
+			return false;
+		int p = (int)(nextPosition - bufferStart);
+		while (true) {
+			while (p < bufferLength && buffer[p] != '\n')
+				p++;
+			if (p < bufferLength || endOfStream)
+				break;
+			// the line crosses the end of the buffer
+			int scanned = (int)(bufferStart + p - nextPosition);
+			if (!fill() && bufferLength == 0)
+				return false;
+			p = scanned;
+		}
+		
+		lineStart = nextPosition;
+		lineEnd = bufferStart + p;
+		nextPosition = lineEnd + 1;
+		if (lineEnd > lineStart && byteAt(lineEnd - 1) == '\r')
+			lineEnd--;
+		return true;
+	}
+	
+	protected byte byteAt(long position) {
+		return buffer[(int)(position - bufferStart)];
+	}
+	
+	public String getLine() {
+		return new String(buffer, (int)(lineStart - bufferStart), (int)(lineEnd - lineStart), UTF8);
+	}
+	
+	public byte[] getLineBytes() {
+		return Arrays.copyOfRange(buffer, (int)(lineStart - bufferStart), (int)(lineEnd - bufferStart));
+	}
+	
+	/**
+	 * Skip forward to the given offset.
+	 * 
+	 * @param position the offset (in bytes) of the beginning of a line, 
+	 * not before the next line
+	 * @throws IOException if the offset is behind or past the end of the stream
+	 */
+	public void seek(long position) throws IOException {
+		if (position < nextPosition)
+			throw new IOException("Cannot seek back to offset " + position + " in a stream, next line is at offset " + nextPosition);
+		if (position <= bufferStart + bufferLength) {
+			nextPosition = position;
+			return;
+		}
+		long skip = position - (bufferStart + bufferLength);
+		while (skip > 0) {
+			long skipped = in.skip(skip);
+			if (skipped <= 0) {
+				if (in.read() < 0)
+					throw new IOException("Cannot seek to offset " + position + ", stream ended at offset " + (position - skip));
+				skipped = 1;
+			}
+			skip -= skipped;
+		}
+		bufferStart = position;
+		bufferLength = 0;
+		nextPosition = position;
+	}
+	
+	public void close() throws IOException {
+		in.close();
+	}
+}
@@ -0,0 +1,104 @@
+package storm.twitter.datadriver;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Writes tuples as lines (UTF-8, '\n' terminated) to a file or a TCP 
+ * socket. Each sender buffers its own lines and writes them to the shared 
+ * stream as a whole when flushed or when its buffer is full, so that the 
+ * lines of different producer threads never interleave.
+ */
+public class StreamSink implements TupleSink {
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final byte[] NO_SUFFIX = new byte[0];
+	
+	private final OutputStream out;
+	private final Socket socket;
+	
+	/**
+	 * @param address file:&lt;path&gt; or socket:&lt;host&gt;:&lt;port&gt;
+	 * @throws IOException
+	 */
+	public StreamSink(String address) throws IOException {
+		if (address.startsWith("socket:")) {
+			int colon = address.lastIndexOf(':');
+			socket = new Socket(address.substring(7, colon), Integer.parseInt(address.substring(colon + 1)));
+			socket.setTcpNoDelay(true);
+			out = socket.getOutputStream();
+		} else if (address.startsWith("file:")) {
+			socket = null;
+			out = new FileOutputStream(address.substring(5));
+		} else
+			throw new IllegalArgumentException("Sink address must be file:<path> or socket:<host>:<port>: " + address);
+	}
+	
+	public TupleSender createSender() {
+		return new StreamSender();
+	}
+	
+	/**
+	 * @param bytes
+	 * @param length
+	 * @throws IOException
+	 */
+	private synchronized void write(byte[] bytes, int length) throws IOException {
+		out.write(bytes, 0, length);
+	}
+	
+	public void close() throws IOException {
+		out.close();
+		if (socket != null)
+			socket.close();
+	}
+	
+	private class StreamSender implements TupleSender {
+		
+		private byte[] buffer = new byte[BUFFER_SIZE];
+		private int length;
+		
+		public void send(Object tuple, ReplicaSuffix suffix, int shard) throws IOException {
+			byte[] bytes;
+			int offset, bytesLength;
+			if (tuple instanceof Payload) {
+				Payload payload = (Payload)tuple;
+				bytes = payload.getArray();
+				offset = payload.getOffset();
+				bytesLength = payload.getLength();
+			} else {
+				bytes = ((String)tuple).getBytes(UTF8);
+				offset = 0;
+				bytesLength = bytes.length;
+			}
+			byte[] suffixBytes = suffix != null ? suffix.getBytes() : NO_SUFFIX;
+			int lineLength = bytesLength + suffixBytes.length + 1;
+			if (length + lineLength > buffer.length) {
+				flush();
+				if (lineLength > buffer.length)
+					buffer = Arrays.copyOf(buffer, lineLength);
+			}
+			System.arraycopy(bytes, offset, buffer, length, bytesLength);
+			length += bytesLength;
+			System.arraycopy(suffixBytes, 0, buffer, length, suffixBytes.length);
+			length += suffixBytes.length;
+			buffer[length++] = '\n';
+		}
+		
+		public void flush() throws IOException {
+			if (length > 0) {
+				write(buffer, length);
+				length = 0;
+			}
+		}
+		
+		public void close() throws IOException {
+			flush();
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package storm.twitter.datadriver;
+
+/**
+ * Extracts the timestamp of a dataset line, which decides the second the
+ * line belongs to. Implementations should read the bytes of the line 
+ * rather than decode it, since every line of the dataset goes through
+ * them, skipped ones included.
+ */
+public interface TimestampExtractor {
+	
+	/**
+	 * @param reader positioned on the line
+	 * @return the timestamp of the current line of the reader (in ms)
+	 * @throws Exception if the line has no valid timestamp
+	 */
+	public long getTimestamp(LineReader reader) throws Exception;
+}
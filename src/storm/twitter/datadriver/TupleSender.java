@@ -0,0 +1,29 @@
+package storm.twitter.datadriver;
+
+/**
+ * Sends tuples on behalf of one producer thread. A sender may hold tuples
+ * back, e.g. in a transaction or a buffer, until flush(); the driver 
+ * flushes before waiting for the next tuple, so that pacing is preserved 
+ * at the destination.
+ */
+public interface TupleSender {
+	
+	/**
+	 * @param tuple a line of a text dataset (String) or a pre-encoded 
+	 * Payload, valid only until send() returns
+	 * @param suffix to append to the tuple, telling a replica from the 
+	 * others, null to send the tuple as it is
+	 * @param shard the shard of the tuple, in [0, shards)
+	 * @throws Exception
+	 */
+	public void send(Object tuple, ReplicaSuffix suffix, int shard) throws Exception;
+	
+	/**
+	 * Deliver the tuples held back, if any.
+	 * 
+	 * @throws Exception
+	 */
+	public void flush() throws Exception;
+	
+	public void close() throws Exception;
+}
@@ -0,0 +1,23 @@
+package storm.twitter.datadriver;
+
+/**
+ * Where the driver sends tuples: a JMS queue (JmsSink), an in-memory queue
+ * consumed in the same JVM (QueueSink), a file or socket (StreamSink), or
+ * nowhere (NullSink) to measure the ceiling of the driver itself.
+ * Each producer thread sends through its own TupleSender.
+ */
+public interface TupleSink {
+	
+	/**
+	 * @return a new sender, to be used by a single thread
+	 * @throws Exception
+	 */
+	public TupleSender createSender() throws Exception;
+	
+	/**
+	 * Release the resources of the sink, once all its senders are closed.
+	 * 
+	 * @throws Exception
+	 */
+	public void close() throws Exception;
+}
@@ -1,54 +1,344 @@
 package storm.twitter.datadriver;
 
+import java.io.PrintStream;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
 
+import javax.jms.BytesMessage;
 import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.Message;
 import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
 import javax.jms.Queue;
 import javax.jms.Session;
 import javax.jms.TextMessage;
 import javax.naming.InitialContext;
 
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
 import org.apache.log4j.Logger;
 import org.apache.log4j.PropertyConfigurator;
 
-public class TwitterDataConsumer {
+import com.beust.jcommander.JCommander;
 
-	public static void main(String[] args) throws Exception {
-		
-		PropertyConfigurator.configure("data-consumer-log4j.properties");
-		Logger logger = Logger.getLogger(TwitterDataConsumer.class);
-		
-		Properties props = new Properties();
-		props.put("java.naming.factory.initial","org.jnp.interfaces.NamingContextFactory");
-		props.put("java.naming.provider.url", args[0]);
-		props.put("java.naming.factory.url.pkgs","org.jboss.naming:org.jnp.interfaces");
-		InitialContext context = new InitialContext(props);
-		logger.info("Context created!");
-		
-		Queue queue = (Queue)context.lookup("/queue/tweetQueue");
-		logger.info("Queue looked up!");
+/**
+ * Consumes the tuples sent by TwitterDataDriver and measures, second by 
+ * second, how many messages are received and their end-to-end latency, 
+ * computed from the send time the driver stamps on each message (see 
+ * JmsSink.SEND_TIME_PROPERTY). Messages are consumed by several consumers,
+ * each with its own session, either through asynchronous listeners or by a
+ * thread per consumer looping on receive(). Bodies are not even read 
+ * unless they have to be logged, but envelopes of packed tuples (see 
+ * -pack-size of the driver) are unpacked with EnvelopeDecoder as a spout
+ * would, each of their tuples counting as a message received.
+ */
+public class TwitterDataConsumer {
+	
+	private static final int SIGNIFICANT_DIGITS = 3;
+	
+	private final DataConsumerParameters dcp;
+	
+	private Logger logger = Logger.getLogger(TwitterDataConsumer.class);
+	
+	private PrintStream throughputLog;
+	
+	/**
+	 * end-to-end latency (in us) of the messages received in the current 
+	 * second, and since the beginning
+	 */
+	private final Recorder latency = new Recorder(SIGNIFICANT_DIGITS);
+	private final Histogram latencyTotal = new Histogram(SIGNIFICANT_DIGITS);
+	private Histogram latencyInterval;
+	
+	private Consumer[] consumers;
+	private volatile boolean running = true;
+	private final CountDownLatch stopped = new CountDownLatch(1);
+	private long received;
+	private long begin;
+	
+	public TwitterDataConsumer(DataConsumerParameters dcp) throws Exception {
+		this.dcp = dcp;
+		if (dcp.logThroughput)
+			throughputLog = new PrintStream("twitter-data-consumer-throughput-" + System.currentTimeMillis());
+	}
+	
+	public void start() throws Exception {
 		
-		ConnectionFactory cf = (ConnectionFactory)context.lookup("/ConnectionFactory");
-		logger.info("Connection Factory looked up!");
+		InitialContext context = null;
+		try {
+			Properties props = new Properties();
+			props.put("java.naming.factory.initial","org.jnp.interfaces.NamingContextFactory");
+			props.put("java.naming.provider.url", dcp.jmsServerHost);
+			props.put("java.naming.factory.url.pkgs","org.jboss.naming:org.jnp.interfaces");
+			context = new InitialContext(props);
+			logger.info("Context created!");
+			
+			int shards = Math.max(1, dcp.shards);
+			Queue[] queues = new Queue[shards];
+			for (int i = 0; i < shards; i++)
+				queues[i] = (Queue)context.lookup("/queue/" + dcp.queueName + (shards > 1 ? "-" + i : ""));
+			logger.info(shards + " Queue(s) looked up!");
+			
+			ConnectionFactory cf = (ConnectionFactory)context.lookup("/ConnectionFactory");
+			logger.info("Connection Factory looked up!");
+			
+			start(cf, queues);
+		} finally {
+			// also when the lookups fail, so that stop() does not wait for consuming that never began
+			stopped.countDown();
+			if (context != null)
+				context.close();
+		}
+	}
+	
+	/**
+	 * Consume from the given queues, consumer i consuming queue i modulo 
+	 * the number of queues, until the duration is over or stop() is called.
+	 * 
+	 * @param cf
+	 * @param queues
+	 * @throws Exception
+	 */
+	public void start(ConnectionFactory cf, Queue[] queues) throws Exception {
+		try {
+			consume(cf, queues);
+		} finally {
+			stopped.countDown();
+		}
+	}
+	
+	private void consume(ConnectionFactory cf, Queue[] queues) throws Exception {
+		int acknowledgeMode;
+		if ("auto".equals(dcp.ackMode))
+			acknowledgeMode = Session.AUTO_ACKNOWLEDGE;
+		else if ("dups_ok".equals(dcp.ackMode))
+			acknowledgeMode = Session.DUPS_OK_ACKNOWLEDGE;
+		else if ("client".equals(dcp.ackMode))
+			acknowledgeMode = Session.CLIENT_ACKNOWLEDGE;
+		else
+			throw new IllegalArgumentException("Unknown ack mode: " + dcp.ackMode);
+		boolean listener = "listener".equals(dcp.mode);
+		if (!listener && !"receive".equals(dcp.mode))
+			throw new IllegalArgumentException("Unknown mode: " + dcp.mode);
 		
 		Connection connection = cf.createConnection();
 		logger.info("Connection created!");
 		
-		Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
-		logger.info("Session created!");
-		
-		MessageConsumer messageConsumer = session.createConsumer(queue);
-		logger.info("MessageConsumer created!");
+		consumers = new Consumer[Math.max(1, dcp.consumers)];
+		for (int i = 0; i < consumers.length; i++)
+			consumers[i] = new Consumer(connection, queues[i % queues.length], acknowledgeMode, listener, i);
+		logger.info(consumers.length + " MessageConsumer(s) created (mode: " + dcp.mode + ", ack mode: " + dcp.ackMode + ")!");
 		
 		connection.start();
 		logger.info("Connection started!");
+		if (!listener)
+			for (Consumer consumer : consumers)
+				consumer.start();
 		
-		while (true) {
-			TextMessage messageReceived = (TextMessage)messageConsumer.receive();
-			logger.info("Received message: " + messageReceived.getText());
+		// report received messages and latency once per second
+		begin = System.nanoTime();
+		long lastReceived = 0;
+		int second = 0;
+		while (running && (dcp.duration <= 0 || second < dcp.duration)) {
+			long wait = begin + (second + 1) * Pacer.NANOS_PER_SECOND - System.nanoTime();
+			if (wait > 0)
+				Thread.sleep(wait / 1000000, (int)(wait % 1000000));
+			long wallTime = System.currentTimeMillis();
+			long total = getReceived();
+			logSecond(second++, total - lastReceived, wallTime);
+			lastReceived = total;
+		}
+		
+		// cleanup
+		running = false;
+		connection.stop();
+		for (Consumer consumer : consumers)
+			consumer.close();
+		connection.close();
+		logSummary();
+		if (throughputLog != null)
+			throughputLog.close();
+	}
+	
+	/**
+	 * Stop consuming and wait for start() to log the summary, at the end
+	 * of the current second.
+	 * 
+	 * @throws InterruptedException
+	 */
+	public void stop() throws InterruptedException {
+		running = false;
+		stopped.await();
+	}
+	
+	/**
+	 * @return the messages received so far by all the consumers
+	 */
+	public long getReceived() {
+		long total = 0;
+		for (Consumer consumer : consumers)
+			total += consumer.received;
+		return total;
+	}
+	
+	private synchronized void logSecond(int second, long messages, long wallTime) {
+		latencyInterval = latency.getIntervalHistogram(latencyInterval);
+		latencyTotal.add(latencyInterval);
+		received += messages;
+		logger.info("[Second " + second + "] " + messages + " messages received, latency (us) " + format(latencyInterval));
+		if (throughputLog != null)
+			throughputLog.println(second + "," + messages + "," + latencyInterval.getValueAtPercentile(50) + "," + latencyInterval.getValueAtPercentile(99) + "," + latencyInterval.getMaxValue() + "," + wallTime);
+	}
+	
+	private synchronized void logSummary() {
+		double seconds = (double)(System.nanoTime() - begin) / Pacer.NANOS_PER_SECOND;
+		logger.info("DataConsumer completed: " + received + " messages received in " + Math.round(seconds) + " seconds (" + Math.round(received / seconds) + " per second), latency (us) " + format(latencyTotal));
+	}
+	
+	private static String format(Histogram histogram) {
+		if (histogram.getTotalCount() == 0)
+			return "n/a";
+		return "p50=" + histogram.getValueAtPercentile(50) + " p99=" + histogram.getValueAtPercentile(99) + " p99.9=" + histogram.getValueAtPercentile(99.9) + " max=" + histogram.getMaxValue();
+	}
+	
+	/**
+	 * A session and its consumer, fed by the session thread of the provider
+	 * (listener mode) or by its own thread (receive mode). Either way, a 
+	 * consumer handles one message at a time, so its counters have a single
+	 * writer.
+	 */
+	private class Consumer extends Thread implements MessageListener {
+		
+		private final Session session;
+		private final MessageConsumer consumer;
+		private final boolean clientAcknowledge;
+		
+		/**
+		 * tuples received so far, read by the reporting thread
+		 */
+		private volatile long received;
+		
+		/**
+		 * messages received and not acknowledged yet in client ack mode, 
+		 * the last of which acknowledges all of them
+		 */
+		private int unacknowledged;
+		private Message lastMessage;
+		
+		/**
+		 * unpacks the envelopes sent with -pack-size
+		 */
+		private final EnvelopeDecoder decoder = new EnvelopeDecoder();
+		
+		public Consumer(Connection connection, Queue queue, int acknowledgeMode, boolean listener, int index) throws JMSException {
+			super("Consumer-" + index);
+			session = connection.createSession(false, acknowledgeMode);
+			consumer = dcp.selector != null ? session.createConsumer(queue, dcp.selector) : session.createConsumer(queue);
+			clientAcknowledge = acknowledgeMode == Session.CLIENT_ACKNOWLEDGE;
+			if (listener)
+				consumer.setMessageListener(this);
+		}
+		
+		public void onMessage(Message message) {
+			try {
+				int tuples = message instanceof BytesMessage ? decoder.decode((BytesMessage)message) : -1;
+				if (message.propertyExists(JmsSink.SEND_TIME_PROPERTY))
+					latency.recordValueWithCount(Math.max(0, EpochClock.currentTimeMicros() - message.getLongProperty(JmsSink.SEND_TIME_PROPERTY)), Math.max(1, tuples));
+				received += Math.max(1, tuples);
+				if (dcp.logMessages && logger.isDebugEnabled()) {
+					if (tuples >= 0)
+						for (int i = 0; i < tuples; i++)
+							logger.debug("Received packed tuple: " + decoder.getLine(i));
+					else
+						logger.debug("Received message: " + getBody(message));
+				}
+				if (clientAcknowledge) {
+					lastMessage = message;
+					if (++unacknowledged >= dcp.ackBatch) {
+						message.acknowledge();
+						unacknowledged = 0;
+					}
+				}
+			} catch (Exception e) {
+				logger.error("Error while handling a message in " + getName(), e);
+			}
+		}
+		
+		/* (non-Javadoc)
+		 * @see java.lang.Thread#run()
+		 * 
+		 * Receive mode: loops receiving messages until the consumer stops.
+		 */
+		public void run() {
+			try {
+				while (running) {
+					Message message = consumer.receive(1000);
+					if (message != null)
+						onMessage(message);
+				}
+			} catch (JMSException e) {
+				if (running)
+					logger.error("Error while receiving in " + getName(), e);
+			}
+		}
+		
+		/**
+		 * Acknowledge the messages still unacknowledged and close the 
+		 * session, once the connection is stopped.
+		 * 
+		 * @throws Exception
+		 */
+		public void close() throws Exception {
+			if (isAlive())
+				join();
+			if (unacknowledged > 0)
+				lastMessage.acknowledge();
+			session.close();
+		}
+	}
+	
+	/**
+	 * @param message
+	 * @return the text of the message, binary payloads decoded as UTF-8
+	 * @throws Exception
+	 */
+	private static String getBody(Message message) throws Exception {
+		if (message instanceof BytesMessage) {
+			// binary replay files are sent as UTF-8 payloads
+			BytesMessage bytesMessage = (BytesMessage)message;
+			byte[] payload = new byte[(int)bytesMessage.getBodyLength()];
+			bytesMessage.readBytes(payload);
+			return new String(payload, "UTF-8");
+		}
+		return ((TextMessage)message).getText();
+	}
+	
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) throws Exception {
+		
+		DataConsumerParameters dcp = new DataConsumerParameters();
+		new JCommander(dcp, args);
+		
+		PropertyConfigurator.configure(dcp.log4j);
+		
+		final TwitterDataConsumer consumer = new TwitterDataConsumer(dcp);
+		// log the summary when killed
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				try {
+					consumer.stop();
+				} catch (InterruptedException e) {
+				}
+			}
+		});
+		try {
+			consumer.start();
+		} catch (Exception e) {
+			Logger.getLogger(TwitterDataConsumer.class).error("Error during execution", e);
 		}
 	}
-
 }
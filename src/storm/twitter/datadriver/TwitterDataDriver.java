@@ -1,15 +1,12 @@
 package storm.twitter.datadriver;
 
 import java.io.PrintStream;
-import java.util.Properties;
+import java.util.Arrays;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
 
-import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
-import javax.jms.MessageProducer;
 import javax.jms.Queue;
-import javax.jms.Session;
-import javax.jms.TextMessage;
-import javax.naming.InitialContext;
 
 import org.apache.log4j.Logger;
 import org.apache.log4j.PropertyConfigurator;
@@ -19,207 +16,504 @@ import com.beust.jcommander.JCommander;
 public class TwitterDataDriver {
 
 	private final DataDriverParameters ddp;
-	private final TweetReader tweetReader;
+	private final SecondSource<?> source;
 	
-	private OneSecondTweets firstBuffer, secondBuffer;
-	private BufferLoadingThread bufferLoadingThread;
+	private final SecondPrefetcher<?> prefetcher;
+	
+	/**
+	 * the tuples of the second being sent
+	 */
+	private OneSecondBatch<?> firstBuffer;
 	
 	private Logger logger = Logger.getLogger(TwitterDataDriver.class);
 	
 	private PrintStream throughputLog;
 	
+	/**
+	 * producer pool coordination, used only with more than one producer thread
+	 */
+	private CyclicBarrier startBarrier, endBarrier;
+	private volatile long secondStart;
+	private volatile double secondScale;
+	
+	private final Pacer pacer;
+	
+	/**
+	 * how long (in ns) a second of dataset lasts in wall-clock time, 0 to
+	 * send as fast as possible
+	 */
+	private final long secondLength;
+	
+	/**
+	 * secondLength / 1s, scales offsets within a second of dataset to 
+	 * wall-clock time
+	 */
+	private final double timeScale;
+	
+	/**
+	 * adapts windows and gaps to the achieved send rate, null when 
+	 * disabled or unthrottled
+	 */
+	private final RateController rateController;
+	
+	/**
+	 * mixed into the key hash when slicing seconds among nodes, so that 
+	 * node slices are independent of shards
+	 */
+	private static final int NODE_SALT = 0x6e6f6465;
+	
+	private final DriverMetrics metrics = new DriverMetrics();
+	
+	/**
+	 * routes tuples to shards, a single shard unless sharding is enabled
+	 */
+	private final KeyPartitioner partitioner;
+	
+	/**
+	 * the suffix of each replica of a tuple, null to send identical replicas
+	 */
+	private final ReplicaSuffix[] replicaSuffixes;
+	private volatile boolean running = true;
+	
 	public TwitterDataDriver(DataDriverParameters ddp) throws Exception {
 		this.ddp = ddp;
-		tweetReader = new TweetReader(ddp);
+		pacer = new Pacer(ddp);
+		secondLength = ddp.speedFactor > 0 ? Math.round(Pacer.NANOS_PER_SECOND / ddp.speedFactor) : 0;
+		timeScale = (double)secondLength / Pacer.NANOS_PER_SECOND;
+		// asynchronous sends return before the broker acknowledges, their latency tells nothing of the achievable rate
+		rateController = ddp.rateControl && !ddp.asyncSends && secondLength > 0 ? new RateController(ddp, secondLength) : null;
+		if (ddp.rateControl && ddp.asyncSends)
+			logger.info("Rate control disabled with asynchronous sends");
+		partitioner = new KeyPartitioner(ddp);
+		if ("suffix".equals(ddp.replicationMode))
+			replicaSuffixes = ReplicaSuffix.create(ddp.replicaSeparator, ddp.tweetReplicationFactor);
+		else if ("identical".equals(ddp.replicationMode))
+			replicaSuffixes = null;
+		else
+			throw new IllegalArgumentException("Unknown replication mode: " + ddp.replicationMode);
+		if (ddp.nodeCount > 1 && "hash".equals(ddp.nodeSlice))
+			source = sliceSource(createSource(ddp), new KeyPartitioner(ddp, ddp.nodeCount, NODE_SALT), ddp.nodeIndex);
+		else if (ddp.nodeCount > 1 && !"index".equals(ddp.nodeSlice))
+			throw new IllegalArgumentException("Unknown node slice: " + ddp.nodeSlice);
+		else
+			source = createSource(ddp);
 		
-		// pre-load second buffer, so that at the first iteration it gets switched with the first
-		secondBuffer = tweetReader.nextSecondTweets();
-		bufferLoadingThread = new BufferLoadingThread();
+		// start prefetching, so that the first seconds are ready when the driver starts
+		metrics.registerMBean();
+		prefetcher = createPrefetcher(source, ddp.prefetchDepth, metrics);
+		prefetcher.start();
 		
 		if (ddp.logThroughput)
 			throughputLog = new PrintStream("twitter-data-driver-throughput-" + System.currentTimeMillis());
 	}
 	
 	public void start() throws Exception {
-		
-		Properties props = new Properties();
-		props.put("java.naming.factory.initial","org.jnp.interfaces.NamingContextFactory");
-		props.put("java.naming.provider.url", ddp.jmsServerHost);
-		props.put("java.naming.factory.url.pkgs","org.jboss.naming:org.jnp.interfaces");
-		InitialContext context = new InitialContext(props);
-		logger.info("Context created!");
-		
-		Queue queue = (Queue)context.lookup("/queue/tweetQueue");
-		logger.info("Queue looked up!");
-		
-		ConnectionFactory cf = (ConnectionFactory)context.lookup("/ConnectionFactory");
-		logger.info("Connection Factory looked up!");
-		
-		Connection connection = cf.createConnection();
-		logger.info("Connection created!");
-		
-		Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
-		logger.info("Session created!");
-		
-		MessageProducer producer = session.createProducer(queue);
-		logger.info("MessageProducer created!");
-		
-		bufferLoadingThread.start();
-		logger.info("Let's start!!!");
-		boolean lastSecond = true;
-		
-		long begin = System.currentTimeMillis();
-		long tupleCount = 0;
-		
-		while (!tweetReader.isEof() || lastSecond) {
-			long t = System.currentTimeMillis();
-			if (tweetReader.isEof())
-				lastSecond = false;
+		start(createSink(ddp));
+	}
+	
+	/**
+	 * Send the dataset to the given queue, through connections created by
+	 * the given factory, e.g. one of an embedded broker.
+	 * 
+	 * @param cf
+	 * @param queue
+	 * @throws Exception
+	 */
+	public void start(ConnectionFactory cf, Queue queue) throws Exception {
+		start(cf, new Queue[] { queue });
+	}
+	
+	/**
+	 * Send the dataset to the given queues: one queue, or one queue per 
+	 * shard when sharding across queues.
+	 * 
+	 * @param cf
+	 * @param queues
+	 * @throws Exception
+	 */
+	public void start(ConnectionFactory cf, Queue[] queues) throws Exception {
+		start(new JmsSink(ddp, cf, queues));
+	}
+	
+	/**
+	 * Send the dataset to the given sink, which is closed at the end.
+	 * 
+	 * @param sink
+	 * @throws Exception
+	 */
+	public void start(TupleSink sink) throws Exception {
+		/**
+		 *  When slicing seconds by index among nodes, tuple i is sent by 
+		 *  node i % nodeCount and, within the node, by producer 
+		 *  (i / nodeCount) % producerThreads.
+		 */
+		int producerThreads = Math.max(1, ddp.producerThreads);
+		int nodes = "index".equals(ddp.nodeSlice) ? Math.max(1, ddp.nodeCount) : 1;
+		int node = nodes > 1 ? ddp.nodeIndex : 0;
+		ProducerThread[] producerPool = new ProducerThread[producerThreads];
+		try {
+			for (int i = 0; i < producerThreads; i++)
+				producerPool[i] = new ProducerThread(sink.createSender(), node + nodes * i, nodes * producerThreads);
+			logger.info(producerThreads + " producer(s) created (sink: " + ddp.sink + ", transacted: " + ddp.transactedSends + ", async: " + ddp.asyncSends + ")!");
+			
 			/**
-			 *  At each iteration, send all the tuples in one second (in the 
-			 *  first buffer) and in the meanwhile (use another thread) load 
-			 *  all the tuples in the next second (in the second buffer).
-			 *  The first step is switching first and second buffers and start
-			 *  the thread.
+			 *  With a single producer, tweets are sent straight from this thread.
+			 *  Otherwise each ProducerThread sends its own share of every second
+			 *  and the two barriers mark the beginning and the end of the second.
 			 */
-			firstBuffer = secondBuffer;
-			bufferLoadingThread.doLoad();
+			if (producerThreads > 1) {
+				startBarrier = new CyclicBarrier(producerThreads + 1);
+				endBarrier = new CyclicBarrier(producerThreads + 1);
+				for (ProducerThread producerThread : producerPool)
+					producerThread.start();
+			}
 			
-			// decide sleep time and batching
-			int batchLength = 0;
-			int sleepTime = 1000;
-			if (firstBuffer.getSize() > 0) {
-				do {
-					batchLength++;
-					sleepTime = 1000 / (int)Math.ceil(firstBuffer.getSize() / batchLength); // sleep time in ms
-				} while (sleepTime < ddp.minSleepTime);
+			/**
+			 *  Instances of a distributed run start their first second at the 
+			 *  same wall-clock time, agreed through the coordinator or given.
+			 */
+			NodeCoordinator coordinator = null;
+			long startEpoch = ddp.startTime;
+			if (ddp.coordinatorAddress != null && ddp.nodeCount > 1) {
+				coordinator = new NodeCoordinator(ddp);
+				startEpoch = coordinator.awaitStart();
+			}
+			long begin = System.nanoTime();
+			if (startEpoch > 0) {
+				begin += (startEpoch - System.currentTimeMillis()) * 1000000L;
+				logger.info("Node " + ddp.nodeIndex + " of " + ddp.nodeCount + " starting at " + startEpoch + " (in " + (begin - System.nanoTime()) / 1000000 + " ms)");
+				pacer.waitUntil(begin);
 			}
-			logger.info("[Second " + firstBuffer.getSecond() + "] " + firstBuffer.getSize() + " tuples to send, sleep time set to " + sleepTime + " ms with batches of " + batchLength + " tuples");
-			// if (sleepTime == 1000) sleepTime = 500;
 			
-			String tuples[] = firstBuffer.getTweets();
-			long last = System.currentTimeMillis();
-			for (int i = 0; i < firstBuffer.getSize(); i++) {
-				TextMessage message = session.createTextMessage(tuples[i]);
-				producer.send(message);
-				tupleCount++;
-				logger.debug("Sent line: " + tuples[i]);
-				if ((i+1) % batchLength == 0 && i < firstBuffer.getSize() - 1) {
-					long now = System.currentTimeMillis();
-					int timeToSleep = sleepTime - (int)(now - last);
-					sleep(timeToSleep);
-					last = now;
+			logger.info("Let's start!!!");
+			
+			long tupleCount = 0;
+			long secondCount = 0;
+			long lastMetricsLog = begin;
+			long metricsInterval = ddp.metricsInterval * Pacer.NANOS_PER_SECOND;
+			
+			while (true) {
+				/**
+				 *  Seconds are scheduled at absolute times from the beginning, so
+				 *  that the inaccuracy of a second is not carried over to the
+				 *  next ones: a late second just has less time to spread its 
+				 *  tuples. With a speed factor, a second of dataset lasts 
+				 *  1/speedFactor seconds; when unthrottled, every deadline is 
+				 *  already past and tuples are sent as fast as possible.
+				 */
+				long t = begin + secondCount * secondLength;
+				/**
+				 *  At each iteration, send all the tuples in one second (in the 
+				 *  first buffer) while the prefetcher thread keeps loading the
+				 *  following seconds. A slow read only drains the prefetched
+				 *  seconds, the driver waits here only if none is ready.
+				 */
+				firstBuffer = prefetcher.take();
+				if (firstBuffer == null)
+					break;
+				long wallStart = System.nanoTime();
+				if (rateController != null) {
+					rateController.startSecond(t, wallStart);
+					secondStart = rateController.getWindowStart();
+					secondScale = (double)rateController.getWindow() / Pacer.NANOS_PER_SECOND;
+				} else {
+					secondStart = t;
+					secondScale = timeScale;
+				}
+				long wallTime = System.currentTimeMillis();
+				// unthrottled seconds have no schedule to lag behind
+				if (secondLength > 0)
+					metrics.recordLag(wallStart - t);
+				logger.info("[Second " + firstBuffer.getSecond() + "] " + firstBuffer.getSize() + " tuples to send with " + producerThreads + " producer(s)");
+				
+				int sent = 0;
+				long sendTime = 0;
+				if (producerThreads == 1) {
+					sent = producerPool[0].sendSecond(firstBuffer, secondStart, secondScale);
+					sendTime = producerPool[0].sendTimeInSecond;
+				} else {
+					startBarrier.await();
+					endBarrier.await();
+					for (ProducerThread producerThread : producerPool) {
+						sent += producerThread.sentInSecond;
+						sendTime += producerThread.sendTimeInSecond;
+					}
 				}
+				tupleCount += sent;
+				if (rateController != null)
+					rateController.endSecond(firstBuffer.getSecond(), sent, sendTime, producerThreads, System.nanoTime(), t + secondLength);
+				
+				// wait for the end of the second
+				pacer.waitUntil(t + secondLength);
+				secondCount++;
+				logger.info(sent + " tuples sent in " + (System.nanoTime() - wallStart) / 1000000 + " ms, " + tupleCount + " tuples sent so far");
+				logThroughput(firstBuffer.getSecond(), sent, wallTime);
+				metrics.recordSecond(firstBuffer.getSecond(), sent);
+				if (coordinator != null)
+					coordinator.reportSecond(firstBuffer.getSecond(), sent);
+				if (metricsInterval > 0 && System.nanoTime() - lastMetricsLog >= metricsInterval) {
+					metrics.logInterval();
+					lastMetricsLog = System.nanoTime();
+				} else
+					metrics.rollIfDue();
+				prefetcher.release(firstBuffer);
 			}
 			
-			// compute time remaining to 1 second
-			int remainingTime = 1000 - (int)(System.currentTimeMillis() - t);
-			sleep(remainingTime);
-			logger.info(firstBuffer.getSize() + " tuples sent in " + (System.currentTimeMillis() - t) + " ms, " + tupleCount + " tuples sent so far");
-			logThroughput(firstBuffer.getSecond(), firstBuffer.getSize());
+			double duration = (double)(System.nanoTime() - begin) / Pacer.NANOS_PER_SECOND;
+			logger.info("DataDriver completed: " + tupleCount + " tuples sent in " + (int)Math.round(duration) + " seconds");
+			if (coordinator != null)
+				coordinator.finish(tupleCount, duration);
+			if (rateController != null && rateController.getLateSeconds() > 0)
+				logger.warn(rateController.getLateSeconds() + " seconds could not catch up with the schedule, max lag " + rateController.getMaxLag() / 1000000 + " ms");
+			metrics.roll();
+			metrics.logSummary();
+			if (partitioner.getShards() > 1) {
+				long[] sentPerShard = new long[partitioner.getShards()];
+				for (ProducerThread producerThread : producerPool)
+					for (int i = 0; i < sentPerShard.length; i++)
+						sentPerShard[i] += producerThread.sentPerShard[i];
+				logger.info("Tuples sent per shard: " + Arrays.toString(sentPerShard));
+			}
+		} finally {
+			/**
+			 *  Release the producers whatever happened, even if the loop 
+			 *  failed while they wait on a barrier: resetting breaks the 
+			 *  barriers for the threads waiting on them, so keep resetting
+			 *  until every producer has seen that the driver is over.
+			 */
+			running = false;
+			if (producerThreads > 1 && startBarrier != null) {
+				for (ProducerThread producerThread : producerPool) {
+					while (producerThread.isAlive()) {
+						startBarrier.reset();
+						endBarrier.reset();
+						producerThread.join(100);
+					}
+				}
+			}
+			for (ProducerThread producerThread : producerPool) {
+				if (producerThread == null)
+					continue;
+				try {
+					producerThread.sender.close();
+				} catch (Exception e) {
+					logger.error("Error while closing the sender of " + producerThread.getName(), e);
+				}
+			}
+			sink.close();
+			// the prefetcher is still reading if the loop failed
+			prefetcher.interrupt();
+			prefetcher.join();
+			source.close();
+			if (throughputLog != null)
+				throughputLog.close();
 		}
-		
-		logger.info("DataDriver completed: " + tupleCount + " tuples sent in " + (int)Math.round((double)(System.currentTimeMillis() - begin) / 1000) + " seconds");
-		
-		// cleanup
-		connection.close();
-		context.close();
-		tweetReader.close();
-		bufferLoadingThread.end();
-		bufferLoadingThread.join();
-		if (throughputLog != null)
-			throughputLog.close();
 	}
 	
-	private void logThroughput(int second, int tuples) {
+	/**
+	 * @param second the second of dataset
+	 * @param tuples the tuples sent for such second
+	 * @param wallTime when the second started to be sent (ms since the epoch)
+	 */
+	private void logThroughput(int second, int tuples, long wallTime) {
 		if (throughputLog != null)
-			throughputLog.println(second + "," + tuples);
+			throughputLog.println(second + "," + tuples + "," + wallTime);
 	}
 
 	/**
-	 * This thread is in charge of loading the tuples of the next second while the DataDriver is streaming the tuples of the current second
-	 * @author Leonardo
-	 *
+	 * This thread owns a sender of the sink and sends the tweets of
+	 * each second whose index modulo the pool size equals its offset, so
+	 * that the producers of the pool send disjoint shares of every second.
+	 * With a pool of one, sendSecond() is invoked from the driver thread and
+	 * the thread is never started.
 	 */
-	private class BufferLoadingThread extends Thread {
+	private class ProducerThread extends Thread {
+		
+		private final TupleSender sender;
+		private final int offset;
+		private final int stride;
+		private final PacingStrategy pacingStrategy;
+		
+		/**
+		 * tweets sent during the last second, so far if sending failed, read
+		 * by the driver thread after the end barrier
+		 */
+		private int sentInSecond;
 		
-		private boolean run = true;
-		private Object lock = new Object();
+		/**
+		 * time (in ns) spent in sender.send() during the last second
+		 */
+		private long sendTimeInSecond;
 		
 		/**
-		 * notify the thread to end as soon as possible
+		 * tweets sent to each shard since the beginning
 		 */
-		public void end() {
-			run = false;
-			doLoad();
+		private final long[] sentPerShard;
+		
+		public ProducerThread(TupleSender sender, int offset, int stride) {
+			super("ProducerThread-" + offset);
+			this.sender = sender;
+			this.sentPerShard = new long[partitioner.getShards()];
+			this.offset = offset;
+			this.stride = stride;
+			this.pacingStrategy = createPacingStrategy(ddp.pacingStrategy);
 		}
 		
 		/**
-		 * wake up run() method and load next second tuples
+		 * Send this producer's share of the given second, spreading it 
+		 * over the second started at t as decided by the pacing strategy.
+		 * The pacer waits only for tuples due at least minGap in the 
+		 * future, tuples closer than that are sent straight away, i.e. in
+		 * batches.
+		 * 
+		 * @param buffer the tweets of the second
+		 * @param t the beginning of the second (System.nanoTime() units)
+		 * @param scale wall-clock length of the second divided by 1s, 
+		 * scales the offsets decided by the pacing strategy
+		 * @return the number of tweets sent
+		 * @throws Exception
 		 */
-		public void doLoad() {
-			synchronized (lock) {
-				lock.notifyAll();
+		public int sendSecond(OneSecondBatch<?> buffer, long t, double scale) throws Exception {
+			int size = buffer.getSize() > offset ? (buffer.getSize() - offset + stride - 1) / stride : 0;
+			
+			long minGap = rateController != null ? rateController.getMinGap() : ddp.minGap * 1000L;
+			sentInSecond = 0;
+			sendTimeInSecond = 0;
+			pacingStrategy.startSecond(buffer, size);
+			logger.debug("[Second " + buffer.getSecond() + "] " + getName() + ": " + size + " tuples to send with " + ddp.pacingStrategy + " pacing");
+			
+			/**
+			 *  Senders may hold tuples back, e.g. transacted JMS sends are 
+			 *  delivered to the broker at commit time: flush once per 
+			 *  pacing batch (or every transactionBatchSize tweets) and 
+			 *  always before sleeping, so that pacing is preserved on the 
+			 *  wire.
+			 */
+			int flushSize = ddp.transactionBatchSize > 0 ? ddp.transactionBatchSize : Integer.MAX_VALUE;
+			int unflushed = 0;
+			
+			for (int i = 0; i < size; i++) {
+				int index = offset + i * stride;
+				long deadline = t + (long)(pacingStrategy.nextOffset(buffer, index) * scale);
+				if (deadline - System.nanoTime() >= minGap) {
+					if (unflushed > 0) {
+						sender.flush();
+						unflushed = 0;
+					}
+					metrics.recordPacingError(pacer.waitUntil(deadline));
+				}
+				Object tuple = buffer.getRecord(index);
+				ReplicaSuffix suffix = replicaSuffixes != null ? replicaSuffixes[buffer.getReplica(index)] : null;
+				int shard = partitioner.getShard(tuple);
+				long sendStart = System.nanoTime();
+				sender.send(tuple, suffix, shard);
+				long latency = System.nanoTime() - sendStart;
+				sentInSecond++;
+				sendTimeInSecond += latency;
+				metrics.recordSendLatency(latency);
+				sentPerShard[shard]++;
+				logger.debug("Sent line: " + tuple);
+				if (++unflushed >= flushSize) {
+					sender.flush();
+					unflushed = 0;
+				}
 			}
+			
+			if (unflushed > 0)
+				sender.flush();
+			return size;
 		}
 		
 		/* (non-Javadoc)
 		 * @see java.lang.Thread#run()
 		 * 
-		 * Loops loading next second tuples until end is notified.
-		 * Blocks at the beginning of each iteration waiting for doLoad() method to be invoked.
-		 * 
+		 * Loops sending this producer's share of each second until the 
+		 * driver ends. Blocks on the start barrier at the beginning of each
+		 * second and on the end barrier once its share has been sent.
 		 */
 		public void run() {
-			while (run) {
-				try {
-					synchronized (lock) {
-						lock.wait();
+			try {
+				while (true) {
+					startBarrier.await();
+					if (!running)
+						break;
+					try {
+						sendSecond(firstBuffer, secondStart, secondScale);
+					} catch (Exception e) {
+						// sentInSecond keeps the tweets sent before the error
+						logger.error("Error while sending tweets in " + getName() + " after " + sentInSecond + " tweets", e);
 					}
-					if (!tweetReader.isEof())
-						secondBuffer = tweetReader.nextSecondTweets();
-				} catch (Throwable e) {
-					Logger.getLogger(BufferLoadingThread.class).error("Error while running BufferLoadingThread", e);
+					endBarrier.await();
 				}
+			} catch (BrokenBarrierException e) {
+				// the driver broke the barriers to release producers once over
+				if (running)
+					logger.error("Error while running " + getName(), e);
+			} catch (Throwable e) {
+				logger.error("Error while running " + getName(), e);
 			}
 		}
 	}
 
 	/**
-	 * Stop the execution for the given amount of ms.
-	 * If such amount is greater than sleepTimeThreshold parameter, then 
-	 * Thread.sleep() is used, otherwise busy waiting is employed.
-	 * If sleepTimeAccuracyCheck is enabled, real sleep time is compared with 
-	 * given sleep time. In case the difference (in %) is greater than 
-	 * sleepTimeAccuracyTolerance, then a warn message is logged.
-	 * 
-	 * @param sleepTime in ms
+	 * @param ddp
+	 * @return the sink given by ddp.sink
+	 * @throws Exception
 	 */
-	private void sleep(int sleepTime) {
-		if (sleepTime <= 0)
-			return;
-		
-		long t = System.currentTimeMillis();
-		
-		if (sleepTime > ddp.sleepTimeThreshold) {
-			try {
-				Thread.sleep(sleepTime);
-			} catch (InterruptedException e) {
-				logger.error("Error while sleeping", e);
-			}
-		} else {
-			long now = System.currentTimeMillis();
-			while (System.currentTimeMillis() < now + sleepTime);
-		}
-		
-		if (ddp.sleepTimeAccuracyCheck) {
-			long realSleepTime = System.currentTimeMillis() - t;
-			int accuracy = 100 * (int)Math.abs(realSleepTime - sleepTime) / sleepTime;
-			if (accuracy > ddp.sleepTimeAccuracyTolerance)
-				logger.warn(
-					"Bad sleep time accuracy (" + ddp.sleepTimeAccuracyTolerance + "%, sleep time threshold " + ddp.sleepTimeThreshold + " ms): " +
-					"expected " + sleepTime + " ms, real " + realSleepTime + " ms");
+	private static TupleSink createSink(DataDriverParameters ddp) throws Exception {
+		if ("jms".equals(ddp.sink))
+			return JmsSink.lookup(ddp);
+		if ("queue".equals(ddp.sink))
+			return new QueueSink(ddp.queueName, ddp.sinkQueueCapacity);
+		if ("stream".equals(ddp.sink))
+			return new StreamSink(ddp.sinkAddress);
+		if ("null".equals(ddp.sink))
+			return new NullSink();
+		throw new IllegalArgumentException("Unknown sink: " + ddp.sink);
+	}
+	
+	/**
+	 * @param ddp
+	 * @return the source of the dataset type given by ddp.datasetType
+	 * @throws Exception
+	 */
+	private static SecondSource<?> createSource(DataDriverParameters ddp) throws Exception {
+		if ("synthetic".equals(ddp.datasetType))
+			return new GeneratorSource(ddp);
+		if (ddp.dataDriverfilename == null)
+			throw new IllegalArgumentException("The dataset filename (-ddf) is required");
+		if ("tweets".equals(ddp.datasetType))
+			return new TweetReader(ddp);
+		if ("tuples".equals(ddp.datasetType))
+			return new TupleReader(ddp);
+		if ("binary".equals(ddp.datasetType)) {
+			if (ddp.loop)
+				throw new IllegalArgumentException("Binary replay files cannot loop: their payloads do not locate the timestamps to shift");
+			return new ReplayFileReader(ddp);
 		}
+		throw new IllegalArgumentException("Unknown dataset type: " + ddp.datasetType);
+	}
+	
+	private static <T> SecondSource<T> sliceSource(SecondSource<T> source, KeyPartitioner partitioner, int nodeIndex) {
+		return new NodeSliceSource<T>(source, partitioner, nodeIndex);
+	}
+	
+	private static <T> SecondPrefetcher<T> createPrefetcher(SecondSource<T> source, int depth, DriverMetrics metrics) {
+		return new SecondPrefetcher<T>(source, depth, metrics);
+	}
+	
+	/**
+	 * @param name uniform, poisson or replay
+	 * @return a new instance of the given pacing strategy
+	 */
+	private static PacingStrategy createPacingStrategy(String name) {
+		if ("uniform".equals(name))
+			return new UniformPacing();
+		if ("poisson".equals(name))
+			return new PoissonPacing();
+		if ("replay".equals(name))
+			return new ReplayPacing();
+		throw new IllegalArgumentException("Unknown pacing strategy: " + name);
 	}
 	
 	/**
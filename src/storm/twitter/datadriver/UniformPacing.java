@@ -0,0 +1,20 @@
+package storm.twitter.datadriver;
+
+/**
+ * Spreads the tuples of a second at regular intervals: the i-th of n tuples
+ * is due at i/n seconds.
+ */
+public class UniformPacing implements PacingStrategy {
+	
+	private int size;
+	private int sent;
+	
+	public void startSecond(OneSecondBatch<?> batch, int size) {
+		this.size = size;
+		this.sent = 0;
+	}
+	
+	public long nextOffset(OneSecondBatch<?> batch, int index) {
+		return sent++ * Pacer.NANOS_PER_SECOND / size;
+	}
+}